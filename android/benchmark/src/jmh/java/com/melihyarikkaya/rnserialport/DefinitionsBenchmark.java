@@ -0,0 +1,50 @@
+package com.melihyarikkaya.rnserialport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Definitions.bytesToHex, the public hex helper kept for apps. It wraps SerialCodec.hexEncode,
+ * so compare it with SerialCodecBenchmark.hexEncodeToString to see what the wrapper costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DefinitionsBenchmark
+{
+    @Param({"8", "64", "512", "4096", "65536"})
+    public int frameSize;
+
+    private byte[] frame;
+    private byte[] prefixedFrame;
+
+    @Setup
+    public void setUp()
+    {
+        frame = new byte[frameSize];
+        new Random(frameSize).nextBytes(frame);
+        prefixedFrame = new byte[frameSize + 16];
+        System.arraycopy(frame, 0, prefixedFrame, 16, frameSize);
+    }
+
+    @Benchmark
+    public String bytesToHex()
+    {
+        return Definitions.bytesToHex(frame);
+    }
+
+    @Benchmark
+    public String bytesToHexRange()
+    {
+        return Definitions.bytesToHex(prefixedFrame, 16, frameSize);
+    }
+}
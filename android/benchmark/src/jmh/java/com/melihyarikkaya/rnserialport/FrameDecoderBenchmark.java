@@ -0,0 +1,91 @@
+package com.melihyarikkaya.rnserialport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame fed to a decoder in read-sized chunks, the way FrameTask passes on what it drains.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameDecoderBenchmark
+{
+    // SerialPortDefaultSettings.READ_CHUNK_SIZE, that class needs the USB library
+    private static final int READ_CHUNK_SIZE = 64;
+    private static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    @Param({"delimiter", "fixedLength", "lengthPrefixed", "idleGap"})
+    public String decoder;
+
+    @Param({"8", "64", "512", "4096", "65536"})
+    public int frameSize;
+
+    private FrameDecoder frameDecoder;
+    private byte[] frame;
+    private int decodedBytes;
+
+    private final FrameDecoder.FrameListener listener = new FrameDecoder.FrameListener()
+    {
+        @Override
+        public void onFrame(byte[] frame, int offset, int length)
+        {
+            decodedBytes += length;
+        }
+    };
+
+    @Setup
+    public void setUp()
+    {
+        frame = new byte[frameSize];
+        // payload bytes never form the delimiter
+        Arrays.fill(frame, (byte) 0x55);
+        switch (decoder)
+        {
+            case "delimiter":
+                frameDecoder = new DelimiterFrameDecoder(new byte[] {'\r', '\n'}, false);
+                frame[frameSize - 2] = '\r';
+                frame[frameSize - 1] = '\n';
+                break;
+            case "fixedLength":
+                frameDecoder = new FixedLengthFrameDecoder(frameSize);
+                break;
+            case "lengthPrefixed":
+                // 4-byte big-endian length of the rest of the frame
+                frameDecoder = new LengthPrefixedFrameDecoder(0, 4, false, 0, MAX_FRAME_LENGTH);
+                int bodyLength = frameSize - 4;
+                frame[0] = (byte) (bodyLength >>> 24);
+                frame[1] = (byte) (bodyLength >>> 16);
+                frame[2] = (byte) (bodyLength >>> 8);
+                frame[3] = (byte) bodyLength;
+                break;
+            case "idleGap":
+                frameDecoder = new IdleGapFrameDecoder();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown decoder: " + decoder);
+        }
+    }
+
+    @Benchmark
+    public int decodeFrame()
+    {
+        decodedBytes = 0;
+        for (int offset = 0; offset < frameSize; offset += READ_CHUNK_SIZE)
+        {
+            frameDecoder.decode(frame, offset, Math.min(READ_CHUNK_SIZE, frameSize - offset), listener);
+        }
+        // only ends the frame for idleGap, the others have passed it on already
+        frameDecoder.onIdle(listener);
+        return decodedBytes;
+    }
+}
@@ -0,0 +1,53 @@
+package com.melihyarikkaya.rnserialport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One read published into the ring buffer and drained again, as ReadThread and FrameTask do per read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerialBufferBenchmark
+{
+    // SerialPortDefaultSettings.READ_CHUNK_SIZE, that class needs the USB library
+    private static final int READ_CHUNK_SIZE = 64;
+
+    @Param({"8", "64", "512", "4096", "65536"})
+    public int frameSize;
+
+    private final SerialBuffer buffer = new SerialBuffer();
+    private byte[] frame;
+    // FrameTask drains in read-sized chunks
+    private final byte[] drainBuffer = new byte[READ_CHUNK_SIZE];
+
+    @Setup
+    public void setUp()
+    {
+        frame = new byte[frameSize];
+        new Random(frameSize).nextBytes(frame);
+    }
+
+    @Benchmark
+    public int publishAndDrain()
+    {
+        buffer.add(frame, 0, frameSize);
+        int drained = 0;
+        int length;
+        while ((length = buffer.drain(drainBuffer, 0, drainBuffer.length)) > 0)
+        {
+            drained += length;
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,78 @@
+package com.melihyarikkaya.rnserialport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hex and base64 conversion of one frame, into caller-supplied buffers and into new Strings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerialCodecBenchmark
+{
+    @Param({"8", "64", "512", "4096", "65536"})
+    public int frameSize;
+
+    private byte[] frame;
+    private byte[] decoded;
+    private char[] chars;
+    private String hex;
+    private String base64;
+
+    @Setup
+    public void setUp()
+    {
+        frame = new byte[frameSize];
+        new Random(frameSize).nextBytes(frame);
+        decoded = new byte[frameSize];
+        chars = new char[SerialCodec.hexEncodedLength(frameSize)];
+        hex = SerialCodec.hexEncode(frame, 0, frameSize);
+        base64 = SerialCodec.base64Encode(frame, 0, frameSize);
+    }
+
+    @Benchmark
+    public int hexEncode()
+    {
+        return SerialCodec.hexEncode(frame, 0, frameSize, chars, 0);
+    }
+
+    @Benchmark
+    public String hexEncodeToString()
+    {
+        return SerialCodec.hexEncode(frame, 0, frameSize);
+    }
+
+    @Benchmark
+    public int hexDecode()
+    {
+        return SerialCodec.hexDecode(hex, decoded, 0);
+    }
+
+    @Benchmark
+    public int base64Encode()
+    {
+        return SerialCodec.base64Encode(frame, 0, frameSize, chars, 0);
+    }
+
+    @Benchmark
+    public String base64EncodeToString()
+    {
+        return SerialCodec.base64Encode(frame, 0, frameSize);
+    }
+
+    @Benchmark
+    public int base64Decode()
+    {
+        return SerialCodec.base64Decode(base64, decoded, 0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Keeps the bytes of the frame that is not complete yet.
+ * A partial frame is passed on as it is when the line goes idle.
+ */
+public abstract class AbstractFrameDecoder implements FrameDecoder
+{
+    private static final int DEFAULT_CAPACITY = 256;
+
+    protected byte[] pending = new byte[DEFAULT_CAPACITY];
+    protected int pendingLength = 0;
+
+    @Override
+    public void onIdle(FrameListener listener)
+    {
+        if (pendingLength > 0)
+        {
+            listener.onFrame(pending, 0, pendingLength);
+            pendingLength = 0;
+        }
+    }
+
+    @Override
+    public boolean hasPendingData()
+    {
+        return pendingLength > 0;
+    }
+
+    @Override
+    public int getPendingLength()
+    {
+        return pendingLength;
+    }
+
+    @Override
+    public int limitPending(int maxPending, String overflowPolicy, FrameListener listener)
+    {
+        if (pendingLength <= maxPending)
+        {
+            return 0;
+        }
+        if (Definitions.BUFFER_OVERFLOW_DROP_OLDEST.equals(overflowPolicy))
+        {
+            int dropped = pendingLength - maxPending;
+            discardPending(dropped);
+            return dropped;
+        }
+        if (Definitions.BUFFER_OVERFLOW_DROP_NEWEST.equals(overflowPolicy))
+        {
+            int dropped = pendingLength - maxPending;
+            pendingLength = maxPending;
+            return dropped;
+        }
+        listener.onFrame(pending, 0, pendingLength);
+        pendingLength = 0;
+        return 0;
+    }
+
+    @Override
+    public void reset()
+    {
+        pendingLength = 0;
+    }
+
+    protected void appendPending(byte[] data, int offset, int length)
+    {
+        if (pendingLength + length > pending.length)
+        {
+            byte[] newPending = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, newPending, 0, pendingLength);
+            pending = newPending;
+        }
+        System.arraycopy(data, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    /**
+     * Drops the first count pending bytes and moves the rest to the front.
+     */
+    protected void discardPending(int count)
+    {
+        System.arraycopy(pending, count, pending, 0, pendingLength - count);
+        pendingLength -= count;
+    }
+}
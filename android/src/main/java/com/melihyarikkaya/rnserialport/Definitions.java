@@ -22,6 +22,33 @@ public class Definitions {
     public static final int ERROR_DEVICE_NOT_SUPPORTED            = 16;
     public static final int ERROR_SERVICE_ALREADY_STARTED         = 17;
     public static final int ERROR_SERVICE_ALREADY_STOPPED         = 18;
+    public static final int ERROR_INVALID_FRAME_DECODER           = 19;
+    public static final int ERROR_INVALID_FRAME_TIMEOUT           = 20;
+    public static final int ERROR_INVALID_RETURNED_DATA_TYPE      = 21;
+    public static final int ERROR_INVALID_EVENT_BATCHING          = 22;
+    public static final int ERROR_WRITE_QUEUE_FULL                = 23;
+    public static final int ERROR_WRITE_FAILED                    = 24;
+    public static final int ERROR_INVALID_HEX_STRING              = 25;
+    public static final int ERROR_INVALID_BASE64_STRING           = 26;
+    public static final int ERROR_INVALID_SERIAL_SETTINGS         = 27;
+    public static final int ERROR_INVALID_LOG_LEVEL               = 28;
+    public static final int ERROR_PERMISSION_TIMEOUT              = 29;
+    public static final int ERROR_TRANSACTION_TIMEOUT             = 30;
+    public static final int ERROR_INVALID_TRANSACTION             = 31;
+    public static final int ERROR_INVALID_MODBUS_REQUEST          = 32;
+    public static final int ERROR_MODBUS_EXCEPTION                = 33;
+    public static final int ERROR_MODBUS_INVALID_RESPONSE         = 34;
+    public static final int ERROR_INVALID_POLL                    = 35;
+    public static final int ERROR_POLL_NOT_FOUND                  = 36;
+    public static final int ERROR_INVALID_FRAME_PROCESSOR         = 37;
+    public static final int ERROR_CAPTURE_FAILED                  = 38;
+    public static final int ERROR_CAPTURE_NOT_RUNNING             = 39;
+    public static final int ERROR_REPLAY_FAILED                   = 40;
+    public static final int ERROR_REPLAY_MISMATCH                 = 41;
+    public static final int ERROR_INVALID_BUFFER_LIMIT            = 42;
+    public static final int ERROR_INVALID_CHARSET                 = 43;
+    public static final int ERROR_INVALID_WRITE_BATCH             = 44;
+    public static final int ERROR_SET_BAUDRATE_FAILED             = 45;
 
 
     public static final String ERROR_DEVICE_NOT_FOUND_MESSAGE                   = "Device not found!";
@@ -42,23 +69,62 @@ public class Definitions {
     public static final String ERROR_DEVICE_NOT_SUPPORTED_MESSAGE               = "Device not supported";
     public static final String ERROR_SERVICE_ALREADY_STARTED_MESSAGE            = "Usb service is already started";;
     public static final String ERROR_SERVICE_ALREADY_STOPPED_MESSAGE            = "Usb service is already stopped";;
+    public static final String ERROR_INVALID_FRAME_DECODER_MESSAGE              = "Invalid frame decoder options";
+    public static final String ERROR_INVALID_FRAME_TIMEOUT_MESSAGE              = "Frame timeout must be positive";
+    public static final String ERROR_INVALID_RETURNED_DATA_TYPE_MESSAGE         = "Returned data type is not defined";
+    public static final String ERROR_INVALID_EVENT_BATCHING_MESSAGE             = "Invalid event batching options";
+    public static final String ERROR_WRITE_QUEUE_FULL_MESSAGE                   = "Write queue is full";
+    public static final String ERROR_WRITE_FAILED_MESSAGE                       = "Error writing to port";
+    public static final String ERROR_INVALID_HEX_STRING_MESSAGE                 = "Invalid hex string";
+    public static final String ERROR_INVALID_BASE64_STRING_MESSAGE              = "Invalid base64 string";
+    public static final String ERROR_INVALID_SERIAL_SETTINGS_MESSAGE            = "Invalid serial port settings";
+    public static final String ERROR_INVALID_LOG_LEVEL_MESSAGE                  = "Invalid log level";
+    public static final String ERROR_PERMISSION_TIMEOUT_MESSAGE                 = "Permission request timed out";
+    public static final String ERROR_TRANSACTION_TIMEOUT_MESSAGE                = "No response within the transaction timeout";
+    public static final String ERROR_INVALID_TRANSACTION_MESSAGE                = "Invalid transaction options";
+    public static final String ERROR_INVALID_MODBUS_REQUEST_MESSAGE             = "Invalid Modbus request";
+    public static final String ERROR_MODBUS_EXCEPTION_MESSAGE                   = "Modbus exception code ";
+    public static final String ERROR_MODBUS_INVALID_RESPONSE_MESSAGE            = "Invalid Modbus response";
+    public static final String ERROR_INVALID_POLL_MESSAGE                       = "Invalid poll options";
+    public static final String ERROR_POLL_NOT_FOUND_MESSAGE                     = "Poll not found";
+    public static final String ERROR_INVALID_FRAME_PROCESSOR_MESSAGE            = "Invalid frame processor options";
+    public static final String ERROR_CAPTURE_FAILED_MESSAGE                     = "Capture failed";
+    public static final String ERROR_CAPTURE_NOT_RUNNING_MESSAGE                = "Capture is not running";
+    public static final String ERROR_REPLAY_FAILED_MESSAGE                      = "Replay failed";
+    public static final String ERROR_REPLAY_MISMATCH_MESSAGE                    = "Write does not match the recording";
+    public static final String ERROR_INVALID_BUFFER_LIMIT_MESSAGE               = "Invalid buffer limit or overflow policy";
+    public static final String ERROR_INVALID_CHARSET_MESSAGE                    = "Charset is not supported";
+    public static final String ERROR_INVALID_WRITE_BATCH_MESSAGE                = "Invalid write batch entry";
+    public static final String ERROR_SET_BAUDRATE_FAILED_MESSAGE                = "Baud rate is invalid or could not be set";
     ///////////////////////////////////////////////////////////
 
     public static final int RETURNED_DATA_TYPE_INTARRAY = 1;
     public static final int RETURNED_DATA_TYPE_HEXSTRING = 2;
+    public static final int RETURNED_DATA_TYPE_BASE64 = 3;
+    public static final int RETURNED_DATA_TYPE_TEXT = 4;
+
+    public static final int READ_MODE_BYTE = 1;
+    public static final int READ_MODE_BULK = 2;
+
+    public static final String DRIVER_TYPE_AUTO = "AUTO";
+
+    public static final String TIME_UNIT_MILLISECONDS = "ms";
+    public static final String TIME_UNIT_MICROSECONDS = "us";
+
+    public static final String BUFFER_OVERFLOW_FLUSH_EARLY = "flushEarly";
+    public static final String BUFFER_OVERFLOW_DROP_OLDEST = "dropOldest";
+    public static final String BUFFER_OVERFLOW_DROP_NEWEST = "dropNewest";
+    public static final String BUFFER_OVERFLOW_PAUSE_READING = "pauseReading";
 
     public final static String hexChars = "0123456789ABCDEF";
-    private final static char[] hexArray = hexChars.toCharArray();
 
     public static String bytesToHex(byte[] bytes)
     {
-        char[] hexChars = new char[bytes.length * 2];
-        for ( int j = 0; j < bytes.length; j++ )
-        {
-            int v = bytes[j] & 0xFF;
-            hexChars[j * 2] = hexArray[v >>> 4];
-            hexChars[j * 2 + 1] = hexArray[v & 0x0F];
-        }
-        return new String(hexChars);
+        return SerialCodec.hexEncode(bytes, 0, bytes.length);
+    }
+
+    public static String bytesToHex(byte[] bytes, int offset, int length)
+    {
+        return SerialCodec.hexEncode(bytes, offset, length);
     }
 }
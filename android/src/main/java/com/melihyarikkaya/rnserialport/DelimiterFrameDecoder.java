@@ -0,0 +1,57 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Ends a frame at every occurrence of a delimiter, e.g. \r\n.
+ */
+public class DelimiterFrameDecoder extends AbstractFrameDecoder
+{
+    private final byte[] delimiter;
+    private final boolean stripDelimiter;
+
+    public DelimiterFrameDecoder(byte[] delimiter, boolean stripDelimiter)
+    {
+        if (delimiter == null || delimiter.length == 0)
+        {
+            throw new IllegalArgumentException("Delimiter cannot be empty");
+        }
+        this.delimiter = delimiter.clone();
+        this.stripDelimiter = stripDelimiter;
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener)
+    {
+        // a delimiter may be split across two reads, so rescan its possible start
+        int scanFrom = Math.max(0, pendingLength - delimiter.length + 1);
+        appendPending(data, offset, length);
+
+        int frameStart = 0;
+        int last = pendingLength - delimiter.length;
+        for (int i = scanFrom; i <= last; i++)
+        {
+            if (matchesAt(i))
+            {
+                int frameEnd = stripDelimiter ? i : i + delimiter.length;
+                listener.onFrame(pending, frameStart, frameEnd - frameStart);
+                frameStart = i + delimiter.length;
+                i = frameStart - 1;
+            }
+        }
+        if (frameStart > 0)
+        {
+            discardPending(frameStart);
+        }
+    }
+
+    private boolean matchesAt(int index)
+    {
+        for (int j = 0; j < delimiter.length; j++)
+        {
+            if (pending[index + j] != delimiter[j])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
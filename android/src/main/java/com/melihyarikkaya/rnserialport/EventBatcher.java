@@ -0,0 +1,335 @@
+package com.melihyarikkaya.rnserialport;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onReadDataBatch;
+
+/**
+ * Collects read events of all connections and emits them to JS as one array per tick.
+ * A batch is emitted when it is full or its oldest event has waited maxDelay,
+ * but never more often than maxEventsPerSecond.
+ */
+public class EventBatcher
+{
+    public static final String OVERFLOW_DROP_OLDEST = "dropOldest";
+    public static final String OVERFLOW_DROP_NEWEST = "dropNewest";
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final long DEFAULT_MAX_DELAY = 16L;
+    public static final int DEFAULT_MAX_EVENTS_PER_SECOND = 60;
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 4096;
+
+    private final ReactContext reactContext;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<QueuedEvent> queue = new ArrayDeque<>();
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_DELAY);
+    private long minEmitIntervalNanos = TimeUnit.SECONDS.toNanos(1) / DEFAULT_MAX_EVENTS_PER_SECOND;
+    private int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    private String overflowPolicy = OVERFLOW_DROP_OLDEST;
+
+    private long oldestQueuedNanos = 0;
+    private long lastEmitNanos = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+
+    private volatile boolean enabled = false;
+    private EmitThread emitThread;
+
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+    private final AtomicLong emittedEvents = new AtomicLong(0);
+    private final AtomicLong emittedBatches = new AtomicLong(0);
+
+    public EventBatcher(ReactContext reactContext)
+    {
+        this.reactContext = reactContext;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void configure(int maxBatchSize, long maxDelayMillis, int maxEventsPerSecond,
+                          int maxQueueSize, String overflowPolicy)
+    {
+        if (maxBatchSize <= 0 || maxDelayMillis < 0 || maxEventsPerSecond <= 0 || maxQueueSize <= 0)
+        {
+            throw new IllegalArgumentException("Batch size, events per second and queue size must be positive");
+        }
+        if (!OVERFLOW_DROP_OLDEST.equals(overflowPolicy) && !OVERFLOW_DROP_NEWEST.equals(overflowPolicy))
+        {
+            throw new IllegalArgumentException("Unknown overflow policy: " + overflowPolicy);
+        }
+        lock.lock();
+        try
+        {
+            this.maxBatchSize = maxBatchSize;
+            this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+            this.minEmitIntervalNanos = TimeUnit.SECONDS.toNanos(1) / maxEventsPerSecond;
+            this.maxQueueSize = maxQueueSize;
+            this.overflowPolicy = overflowPolicy;
+            changed.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public synchronized void start()
+    {
+        if (emitThread != null)
+        {
+            return;
+        }
+        enabled = true;
+        emitThread = new EmitThread();
+        emitThread.start();
+    }
+
+    /**
+     * Stops batching and waits until the events still queued have been emitted. Until then new events
+     * keep going through the queue, so the events of a connection are never emitted out of order.
+     */
+    public synchronized void stop()
+    {
+        if (emitThread == null)
+        {
+            return;
+        }
+        emitThread.setKeep(false);
+        lock.lock();
+        try
+        {
+            changed.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        try
+        {
+            emitThread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        emitThread = null;
+    }
+
+    /**
+     * @param stats charged when the event is dropped on overflow
+     * @return false when batching is off and the caller has to emit the event itself
+     */
+    public boolean offer(WritableMap event, SerialConnectionStats stats)
+    {
+        if (!enabled)
+        {
+            return false;
+        }
+        lock.lock();
+        try
+        {
+            // cleared under the lock once the queue is empty for good
+            if (!enabled)
+            {
+                return false;
+            }
+            if (queue.size() >= maxQueueSize)
+            {
+                droppedEvents.incrementAndGet();
+                if (OVERFLOW_DROP_NEWEST.equals(overflowPolicy))
+                {
+                    stats.onEventDropped();
+                    return true;
+                }
+                queue.pollFirst().stats.onEventDropped();
+            }
+            if (queue.isEmpty())
+            {
+                oldestQueuedNanos = System.nanoTime();
+                changed.signal();
+            }
+            queue.addLast(new QueuedEvent(event, stats));
+            if (queue.size() == maxBatchSize)
+            {
+                changed.signal();
+            }
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedEvents()
+    {
+        lock.lock();
+        try
+        {
+            return queue.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedEvents()
+    {
+        return droppedEvents.get();
+    }
+
+    public long getEmittedEvents()
+    {
+        return emittedEvents.get();
+    }
+
+    public long getEmittedBatches()
+    {
+        return emittedBatches.get();
+    }
+
+    private class EmitThread extends Thread
+    {
+        private volatile boolean keep = true;
+
+        @Override
+        public void run()
+        {
+            while (keep)
+            {
+                WritableArray batch;
+                lock.lock();
+                try
+                {
+                    batch = awaitBatch();
+                }
+                catch (InterruptedException e)
+                {
+                    break;
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+                if (batch != null)
+                {
+                    eventEmit(onReadDataBatch, batch);
+                }
+            }
+            flushRemaining();
+        }
+
+        // called with the lock held, returns null when woken up without a batch to emit
+        private WritableArray awaitBatch() throws InterruptedException
+        {
+            if (queue.isEmpty())
+            {
+                if (keep)
+                {
+                    changed.await();
+                }
+                return null;
+            }
+            long now = System.nanoTime();
+            long waitNanos = queue.size() >= maxBatchSize ? 0 : oldestQueuedNanos + maxDelayNanos - now;
+            waitNanos = Math.max(waitNanos, lastEmitNanos + minEmitIntervalNanos - now);
+            if (waitNanos > 0 && keep)
+            {
+                changed.awaitNanos(waitNanos);
+                return null;
+            }
+            lastEmitNanos = now;
+            return takeBatch();
+        }
+
+        private void flushRemaining()
+        {
+            while (true)
+            {
+                WritableArray batch;
+                lock.lock();
+                try
+                {
+                    if (queue.isEmpty())
+                    {
+                        // every queued event has been emitted; from now on callers emit directly
+                        enabled = false;
+                        return;
+                    }
+                    batch = takeBatch();
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+                eventEmit(onReadDataBatch, batch);
+            }
+        }
+
+        public void setKeep(boolean keep)
+        {
+            this.keep = keep;
+        }
+    }
+
+    // called with the lock held
+    private WritableArray takeBatch()
+    {
+        WritableArray batch = Arguments.createArray();
+        int count = 0;
+        while (count < maxBatchSize && !queue.isEmpty())
+        {
+            batch.pushMap(queue.pollFirst().event);
+            count++;
+        }
+        if (!queue.isEmpty())
+        {
+            oldestQueuedNanos = System.nanoTime();
+        }
+        emittedEvents.addAndGet(count);
+        emittedBatches.incrementAndGet();
+        return batch;
+    }
+
+    private static class QueuedEvent
+    {
+        final WritableMap event;
+        final SerialConnectionStats stats;
+
+        QueuedEvent(WritableMap event, SerialConnectionStats stats)
+        {
+            this.event = event;
+            this.stats = stats;
+        }
+    }
+
+    private void eventEmit(String eventName, Object data)
+    {
+        try
+        {
+            if (reactContext.hasActiveCatalystInstance())
+            {
+                reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, data);
+            }
+        }
+        catch (Exception error)
+        {
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Passes on every nth frame, starting with the first.
+ */
+public class EveryNthFrameReducer implements FrameReducer
+{
+    private final int n;
+    private int skipped;
+
+    public EveryNthFrameReducer(int n)
+    {
+        if (n <= 0)
+        {
+            throw new IllegalArgumentException("N must be positive");
+        }
+        this.n = n;
+        this.skipped = n - 1;
+    }
+
+    @Override
+    public void onFrame(byte[] frame, int offset, int length, long firstByteNanos, long lastByteNanos,
+                        FrameProcessor.Output output)
+    {
+        if (++skipped == n)
+        {
+            skipped = 0;
+            output.onFrame(frame, offset, length, firstByteNanos, lastByteNanos);
+        }
+    }
+
+    @Override
+    public long getIntervalNanos()
+    {
+        return 0;
+    }
+
+    @Override
+    public void onInterval(FrameProcessor.Output output)
+    {
+    }
+}
@@ -0,0 +1,45 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Emits a frame every frameLength bytes.
+ */
+public class FixedLengthFrameDecoder extends AbstractFrameDecoder
+{
+    private final int frameLength;
+
+    public FixedLengthFrameDecoder(int frameLength)
+    {
+        if (frameLength <= 0)
+        {
+            throw new IllegalArgumentException("Frame length must be positive");
+        }
+        this.frameLength = frameLength;
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener)
+    {
+        int end = offset + length;
+        if (pendingLength > 0)
+        {
+            int missing = Math.min(frameLength - pendingLength, length);
+            appendPending(data, offset, missing);
+            offset += missing;
+            if (pendingLength < frameLength)
+            {
+                return;
+            }
+            listener.onFrame(pending, 0, frameLength);
+            pendingLength = 0;
+        }
+        while (end - offset >= frameLength)
+        {
+            listener.onFrame(data, offset, frameLength);
+            offset += frameLength;
+        }
+        if (offset < end)
+        {
+            appendPending(data, offset, end - offset);
+        }
+    }
+}
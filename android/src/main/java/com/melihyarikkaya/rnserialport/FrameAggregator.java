@@ -0,0 +1,154 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Reads numeric fields at fixed offsets of every frame and passes on their min, max and mean
+ * once per window instead of the frames. Frames too short for a field are not counted.
+ */
+public class FrameAggregator implements FrameReducer
+{
+    public static final String TYPE_INT8 = "int8";
+    public static final String TYPE_UINT8 = "uint8";
+    public static final String TYPE_INT16 = "int16";
+    public static final String TYPE_UINT16 = "uint16";
+    public static final String TYPE_INT32 = "int32";
+    public static final String TYPE_UINT32 = "uint32";
+    public static final String TYPE_FLOAT32 = "float32";
+
+    public static class Field
+    {
+        private final int offset;
+        private final int size;
+        private final boolean signed;
+        private final boolean floatingPoint;
+        private final boolean littleEndian;
+
+        public Field(int offset, String type, boolean littleEndian)
+        {
+            if (offset < 0)
+            {
+                throw new IllegalArgumentException("Field offset cannot be negative");
+            }
+            this.offset = offset;
+            this.littleEndian = littleEndian;
+            this.floatingPoint = TYPE_FLOAT32.equals(type);
+            this.signed = TYPE_INT8.equals(type) || TYPE_INT16.equals(type) || TYPE_INT32.equals(type);
+            if (TYPE_INT8.equals(type) || TYPE_UINT8.equals(type))
+            {
+                size = 1;
+            }
+            else if (TYPE_INT16.equals(type) || TYPE_UINT16.equals(type))
+            {
+                size = 2;
+            }
+            else if (TYPE_INT32.equals(type) || TYPE_UINT32.equals(type) || floatingPoint)
+            {
+                size = 4;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown field type: " + type);
+            }
+        }
+
+        int getEnd()
+        {
+            return offset + size;
+        }
+
+        double read(byte[] frame, int frameOffset)
+        {
+            long bits = 0;
+            int start = frameOffset + offset;
+            for (int i = 0; i < size; i++)
+            {
+                int index = littleEndian ? start + size - 1 - i : start + i;
+                bits = (bits << 8) | (frame[index] & 0xFF);
+            }
+            if (floatingPoint)
+            {
+                return Float.intBitsToFloat((int) bits);
+            }
+            if (signed)
+            {
+                int shift = 64 - size * 8;
+                return (bits << shift) >> shift;
+            }
+            return bits;
+        }
+    }
+
+    private final long windowNanos;
+    private final Field[] fields;
+    // frames must reach this far to be counted
+    private final int minLength;
+
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+    private int count = 0;
+
+    public FrameAggregator(long windowNanos, Field[] fields)
+    {
+        if (windowNanos <= 0 || fields.length == 0)
+        {
+            throw new IllegalArgumentException("Aggregation needs a positive window and at least one field");
+        }
+        this.windowNanos = windowNanos;
+        this.fields = fields;
+        int end = 0;
+        for (Field field : fields)
+        {
+            end = Math.max(end, field.getEnd());
+        }
+        this.minLength = end;
+        this.min = new double[fields.length];
+        this.max = new double[fields.length];
+        this.sum = new double[fields.length];
+    }
+
+    @Override
+    public void onFrame(byte[] frame, int offset, int length, long firstByteNanos, long lastByteNanos,
+                        FrameProcessor.Output output)
+    {
+        if (length < minLength)
+        {
+            return;
+        }
+        for (int i = 0; i < fields.length; i++)
+        {
+            double value = fields[i].read(frame, offset);
+            if (count == 0 || value < min[i])
+            {
+                min[i] = value;
+            }
+            if (count == 0 || value > max[i])
+            {
+                max[i] = value;
+            }
+            sum[i] = count == 0 ? value : sum[i] + value;
+        }
+        count++;
+    }
+
+    @Override
+    public long getIntervalNanos()
+    {
+        return windowNanos;
+    }
+
+    @Override
+    public void onInterval(FrameProcessor.Output output)
+    {
+        if (count == 0)
+        {
+            return;
+        }
+        double[] mean = new double[fields.length];
+        for (int i = 0; i < fields.length; i++)
+        {
+            mean[i] = sum[i] / count;
+        }
+        output.onAggregate(count, min.clone(), max.clone(), mean);
+        count = 0;
+    }
+}
@@ -0,0 +1,40 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Splits the byte stream of a connection into frames.
+ * All methods are called on the connection's framing strand only, one task at a time.
+ */
+public interface FrameDecoder
+{
+    interface FrameListener
+    {
+        void onFrame(byte[] frame, int offset, int length);
+    }
+
+    /**
+     * Consumes freshly read bytes and reports every frame completed by them.
+     */
+    void decode(byte[] data, int offset, int length, FrameListener listener);
+
+    /**
+     * Called when no byte has arrived for the connection's frame timeout.
+     */
+    void onIdle(FrameListener listener);
+
+    boolean hasPendingData();
+
+    /**
+     * Bytes held while waiting for the end of a frame.
+     */
+    int getPendingLength();
+
+    /**
+     * Shrinks the pending bytes to at most maxPending: flushEarly passes them on as a frame,
+     * dropOldest keeps the newest maxPending bytes and dropNewest the oldest.
+     *
+     * @return number of bytes dropped
+     */
+    int limitPending(int maxPending, String overflowPolicy, FrameListener listener);
+
+    void reset();
+}
@@ -0,0 +1,70 @@
+package com.melihyarikkaya.rnserialport;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.nio.charset.Charset;
+
+public class FrameDecoderFactory
+{
+    public static final String TYPE_IDLE_GAP = "idleGap";
+    public static final String TYPE_DELIMITER = "delimiter";
+    public static final String TYPE_FIXED_LENGTH = "fixedLength";
+    public static final String TYPE_LENGTH_PREFIXED = "lengthPrefixed";
+
+    private static final int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024;
+
+    public static FrameDecoder createDefault()
+    {
+        return new IdleGapFrameDecoder();
+    }
+
+    public static FrameDecoder create(ReadableMap options)
+    {
+        String type = options.hasKey("type") ? options.getString("type") : TYPE_IDLE_GAP;
+        if (TYPE_IDLE_GAP.equals(type))
+        {
+            return new IdleGapFrameDecoder();
+        }
+        if (TYPE_DELIMITER.equals(type))
+        {
+            return new DelimiterFrameDecoder(getDelimiter(options),
+                    getBoolean(options, "stripDelimiter", false));
+        }
+        if (TYPE_FIXED_LENGTH.equals(type))
+        {
+            return new FixedLengthFrameDecoder(getInt(options, "frameLength", 0));
+        }
+        if (TYPE_LENGTH_PREFIXED.equals(type))
+        {
+            return new LengthPrefixedFrameDecoder(getInt(options, "lengthOffset", 0),
+                    getInt(options, "lengthSize", 1),
+                    getBoolean(options, "littleEndian", false),
+                    getInt(options, "lengthAdjustment", 0),
+                    getInt(options, "maxFrameLength", DEFAULT_MAX_FRAME_LENGTH));
+        }
+        throw new IllegalArgumentException("Unknown frame decoder type: " + type);
+    }
+
+    private static byte[] getDelimiter(ReadableMap options)
+    {
+        if (options.hasKey("delimiterHex"))
+        {
+            return SerialCodec.hexDecode(options.getString("delimiterHex"));
+        }
+        if (options.hasKey("delimiter"))
+        {
+            return options.getString("delimiter").getBytes(Charset.forName("UTF-8"));
+        }
+        throw new IllegalArgumentException("Delimiter is not defined");
+    }
+
+    private static int getInt(ReadableMap options, String key, int defaultValue)
+    {
+        return options.hasKey(key) && !options.isNull(key) ? options.getInt(key) : defaultValue;
+    }
+
+    private static boolean getBoolean(ReadableMap options, String key, boolean defaultValue)
+    {
+        return options.hasKey(key) && !options.isNull(key) ? options.getBoolean(key) : defaultValue;
+    }
+}
@@ -0,0 +1,47 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Matches frames whose bytes at offset equal the prefix wherever the mask has bits set.
+ */
+public class FrameFilter
+{
+    private final int offset;
+    private final byte[] prefix;
+    private final byte[] mask;
+
+    /**
+     * @param mask same length as prefix, or null to compare every bit
+     */
+    public FrameFilter(int offset, byte[] prefix, byte[] mask)
+    {
+        if (offset < 0 || prefix == null || prefix.length == 0)
+        {
+            throw new IllegalArgumentException("Filter needs a prefix and a non-negative offset");
+        }
+        if (mask != null && mask.length != prefix.length)
+        {
+            throw new IllegalArgumentException("Mask and prefix must have the same length");
+        }
+        this.offset = offset;
+        this.prefix = prefix;
+        this.mask = mask;
+    }
+
+    public boolean matches(byte[] frame, int frameOffset, int length)
+    {
+        if (length < offset + prefix.length)
+        {
+            return false;
+        }
+        int start = frameOffset + offset;
+        for (int i = 0; i < prefix.length; i++)
+        {
+            int bits = mask == null ? 0xFF : mask[i];
+            if (((frame[start + i] ^ prefix[i]) & bits) != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
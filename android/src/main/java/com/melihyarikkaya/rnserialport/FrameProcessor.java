@@ -0,0 +1,152 @@
+package com.melihyarikkaya.rnserialport;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stage between the frame decoder and event emission: drops frames that match none of the filters,
+ * then hands the rest to the reducer, if any. Runs on the connection's framing strand only.
+ */
+public class FrameProcessor
+{
+    public interface Output
+    {
+        /**
+         * @param firstByteNanos receive time of the first byte of the frame, on the {@link SerialClock}
+         * @param lastByteNanos receive time of the last byte of the frame
+         */
+        void onFrame(byte[] frame, int offset, int length, long firstByteNanos, long lastByteNanos);
+
+        /**
+         * One value per aggregated field, in the order the fields were given.
+         */
+        void onAggregate(int frameCount, double[] min, double[] max, double[] mean);
+    }
+
+    private final FrameFilter[] filters;
+    private final FrameReducer reducer;
+
+    /**
+     * @param filters a frame passes if it matches any of them; empty to pass every frame
+     * @param reducer null to pass on every frame that passes the filters
+     */
+    public FrameProcessor(FrameFilter[] filters, FrameReducer reducer)
+    {
+        this.filters = filters;
+        this.reducer = reducer;
+    }
+
+    /**
+     * Keys: filters ([{prefix or prefixHex, maskHex, offset}]) and at most one of
+     * everyNth, latestInterval (ms) or aggregate ({window (ms), fields: [{offset, type, littleEndian}]}).
+     *
+     * @return null when nothing is configured
+     */
+    public static FrameProcessor fromOptions(ReadableMap options)
+    {
+        FrameFilter[] filters = new FrameFilter[0];
+        if (options.hasKey("filters") && !options.isNull("filters"))
+        {
+            ReadableArray array = options.getArray("filters");
+            filters = new FrameFilter[array.size()];
+            for (int i = 0; i < filters.length; i++)
+            {
+                ReadableMap filter = array.getMap(i);
+                filters[i] = new FrameFilter(getInt(filter, "offset", 0),
+                        SerialTransaction.getBytes(filter, "prefix"),
+                        filter.hasKey("maskHex") ? SerialCodec.hexDecode(filter.getString("maskHex")) : null);
+            }
+        }
+
+        FrameReducer reducer = null;
+        int reducers = 0;
+        if (options.hasKey("everyNth") && !options.isNull("everyNth"))
+        {
+            reducer = new EveryNthFrameReducer(options.getInt("everyNth"));
+            reducers++;
+        }
+        if (options.hasKey("latestInterval") && !options.isNull("latestInterval"))
+        {
+            reducer = new LatestFrameReducer(TimeUnit.MILLISECONDS.toNanos(options.getInt("latestInterval")));
+            reducers++;
+        }
+        if (options.hasKey("aggregate") && !options.isNull("aggregate"))
+        {
+            ReadableMap aggregate = options.getMap("aggregate");
+            ReadableArray array = aggregate.getArray("fields");
+            FrameAggregator.Field[] fields = new FrameAggregator.Field[array.size()];
+            for (int i = 0; i < fields.length; i++)
+            {
+                ReadableMap field = array.getMap(i);
+                fields[i] = new FrameAggregator.Field(field.getInt("offset"),
+                        field.hasKey("type") ? field.getString("type") : FrameAggregator.TYPE_UINT8,
+                        field.hasKey("littleEndian") && field.getBoolean("littleEndian"));
+            }
+            reducer = new FrameAggregator(TimeUnit.MILLISECONDS.toNanos(aggregate.getInt("window")), fields);
+            reducers++;
+        }
+        if (reducers > 1)
+        {
+            throw new IllegalArgumentException("Only one of everyNth, latestInterval and aggregate can be set");
+        }
+        if (filters.length == 0 && reducer == null)
+        {
+            return null;
+        }
+        return new FrameProcessor(filters, reducer);
+    }
+
+    private static int getInt(ReadableMap options, String key, int defaultValue)
+    {
+        return options.hasKey(key) && !options.isNull(key) ? options.getInt(key) : defaultValue;
+    }
+
+    public void process(byte[] frame, int offset, int length, long firstByteNanos, long lastByteNanos,
+                        Output output)
+    {
+        if (!matches(frame, offset, length))
+        {
+            return;
+        }
+        if (reducer == null)
+        {
+            output.onFrame(frame, offset, length, firstByteNanos, lastByteNanos);
+            return;
+        }
+        reducer.onFrame(frame, offset, length, firstByteNanos, lastByteNanos, output);
+    }
+
+    private boolean matches(byte[] frame, int offset, int length)
+    {
+        if (filters.length == 0)
+        {
+            return true;
+        }
+        for (FrameFilter filter : filters)
+        {
+            if (filter.matches(frame, offset, length))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return period of onInterval calls, or 0 when none are needed
+     */
+    public long getIntervalNanos()
+    {
+        return reducer == null ? 0 : reducer.getIntervalNanos();
+    }
+
+    public void onInterval(Output output)
+    {
+        if (reducer != null)
+        {
+            reducer.onInterval(output);
+        }
+    }
+}
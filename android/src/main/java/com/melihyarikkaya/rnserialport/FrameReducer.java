@@ -0,0 +1,21 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Thins out the frames that passed the filters.
+ * All methods are called from the connection's framing strand only.
+ */
+public interface FrameReducer
+{
+    /**
+     * A frame passed on later must be passed with its own receive times, not those of the current frame.
+     */
+    void onFrame(byte[] frame, int offset, int length, long firstByteNanos, long lastByteNanos,
+                 FrameProcessor.Output output);
+
+    /**
+     * @return period of onInterval calls, or 0 when the reducer needs none
+     */
+    long getIntervalNanos();
+
+    void onInterval(FrameProcessor.Output output);
+}
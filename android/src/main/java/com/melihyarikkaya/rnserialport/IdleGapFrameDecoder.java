@@ -0,0 +1,13 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Treats everything received until the line goes idle as one frame.
+ */
+public class IdleGapFrameDecoder extends AbstractFrameDecoder
+{
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener)
+    {
+        appendPending(data, offset, length);
+    }
+}
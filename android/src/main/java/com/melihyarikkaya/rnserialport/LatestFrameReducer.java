@@ -0,0 +1,52 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Passes on only the last frame of each interval, when the interval ends.
+ */
+public class LatestFrameReducer implements FrameReducer
+{
+    private final long intervalNanos;
+    private byte[] latest = new byte[64];
+    private int latestLength = -1;
+    private long latestFirstByteNanos;
+    private long latestLastByteNanos;
+
+    public LatestFrameReducer(long intervalNanos)
+    {
+        if (intervalNanos <= 0)
+        {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.intervalNanos = intervalNanos;
+    }
+
+    @Override
+    public void onFrame(byte[] frame, int offset, int length, long firstByteNanos, long lastByteNanos,
+                        FrameProcessor.Output output)
+    {
+        if (latest.length < length)
+        {
+            latest = new byte[Math.max(length, latest.length * 2)];
+        }
+        System.arraycopy(frame, offset, latest, 0, length);
+        latestLength = length;
+        latestFirstByteNanos = firstByteNanos;
+        latestLastByteNanos = lastByteNanos;
+    }
+
+    @Override
+    public long getIntervalNanos()
+    {
+        return intervalNanos;
+    }
+
+    @Override
+    public void onInterval(FrameProcessor.Output output)
+    {
+        if (latestLength >= 0)
+        {
+            output.onFrame(latest, 0, latestLength, latestFirstByteNanos, latestLastByteNanos);
+            latestLength = -1;
+        }
+    }
+}
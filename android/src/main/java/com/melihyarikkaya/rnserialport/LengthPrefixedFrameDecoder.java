@@ -0,0 +1,76 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Reads the frame length from a header field.
+ * Total frame length = lengthOffset + lengthSize + field value + lengthAdjustment.
+ */
+public class LengthPrefixedFrameDecoder extends AbstractFrameDecoder
+{
+    private final int lengthOffset;
+    private final int lengthSize;
+    private final boolean littleEndian;
+    private final int lengthAdjustment;
+    private final int maxFrameLength;
+
+    public LengthPrefixedFrameDecoder(int lengthOffset, int lengthSize, boolean littleEndian,
+                                      int lengthAdjustment, int maxFrameLength)
+    {
+        if (lengthOffset < 0)
+        {
+            throw new IllegalArgumentException("Length offset cannot be negative");
+        }
+        if (lengthSize != 1 && lengthSize != 2 && lengthSize != 4)
+        {
+            throw new IllegalArgumentException("Length size must be 1, 2 or 4");
+        }
+        if (maxFrameLength <= 0)
+        {
+            throw new IllegalArgumentException("Max frame length must be positive");
+        }
+        this.lengthOffset = lengthOffset;
+        this.lengthSize = lengthSize;
+        this.littleEndian = littleEndian;
+        this.lengthAdjustment = lengthAdjustment;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener)
+    {
+        appendPending(data, offset, length);
+
+        int frameStart = 0;
+        int headerLength = lengthOffset + lengthSize;
+        while (pendingLength - frameStart >= headerLength)
+        {
+            long frameLength = headerLength + readLength(frameStart + lengthOffset) + lengthAdjustment;
+            if (frameLength < headerLength || frameLength > maxFrameLength)
+            {
+                // corrupted header, drop one byte and resynchronize
+                frameStart++;
+                continue;
+            }
+            if (pendingLength - frameStart < frameLength)
+            {
+                break;
+            }
+            listener.onFrame(pending, frameStart, (int) frameLength);
+            frameStart += (int) frameLength;
+        }
+        if (frameStart > 0)
+        {
+            discardPending(frameStart);
+        }
+    }
+
+    private long readLength(int index)
+    {
+        long value = 0;
+        for (int i = 0; i < lengthSize; i++)
+        {
+            int b = pending[littleEndian ? index + lengthSize - 1 - i : index + i] & 0xFF;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,257 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory SerialTransport simulating a device: written bytes are echoed back (or injected with inject())
+ * and become readable after the configured latency, paced at the baud rate, in random bursts.
+ * Each read and write may drop the link with the configured probability.
+ * Uses no Android API itself, so the pipeline behind it runs without hardware.
+ */
+public class LoopbackTransport implements SerialTransport
+{
+    public static final int PACKET_SIZE = 64;
+    // start, 8 data and stop bit
+    private static final int BITS_PER_BYTE = 10;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<Packet> packets = new ArrayDeque<>();
+    private final Random random;
+
+    private volatile int baudRate = SerialPortDefaultSettings.BAUD_RATE;
+    private volatile long latencyNanos = 0;
+    private volatile int maxBurstSize = 0;
+    private volatile long maxBurstGapNanos = 0;
+    private volatile double disconnectProbability = 0;
+    private volatile boolean echo = true;
+
+    // guarded by lock
+    private long lineFreeNanos = 0;
+    private long nextBurstNanos = 0;
+    // written under lock
+    private volatile boolean closed = false;
+
+    public LoopbackTransport(long seed)
+    {
+        this.random = new Random(seed);
+    }
+
+    public void setLatencyMillis(long latencyMillis)
+    {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+    }
+
+    /**
+     * Reads return at most maxBurstSize bytes and are followed by a random pause of up to maxBurstGap.
+     * 0 disables bursts.
+     */
+    public void setBursts(int maxBurstSize, long maxBurstGapMillis)
+    {
+        this.maxBurstSize = maxBurstSize;
+        this.maxBurstGapNanos = TimeUnit.MILLISECONDS.toNanos(maxBurstGapMillis);
+    }
+
+    public void setDisconnectProbability(double disconnectProbability)
+    {
+        this.disconnectProbability = disconnectProbability;
+    }
+
+    public void setEcho(boolean echo)
+    {
+        this.echo = echo;
+    }
+
+    /**
+     * Queues bytes as if the device had sent them.
+     */
+    public void inject(byte[] data, int offset, int length)
+    {
+        lock.lock();
+        try
+        {
+            long now = System.nanoTime();
+            long nanosPerByte = baudRate > 0 ? TimeUnit.SECONDS.toNanos(BITS_PER_BYTE) / baudRate : 0;
+            long arrival = Math.max(now + latencyNanos, lineFreeNanos);
+            for (int i = offset; i < offset + length; i += PACKET_SIZE)
+            {
+                int size = Math.min(PACKET_SIZE, offset + length - i);
+                arrival += size * nanosPerByte;
+                packets.addLast(new Packet(Arrays.copyOfRange(data, i, i + size), arrival));
+            }
+            lineFreeNanos = arrival;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean open()
+    {
+        return !closed;
+    }
+
+    @Override
+    public int read(byte[] buffer)
+    {
+        lock.lock();
+        try
+        {
+            if (closed || dropsLink())
+            {
+                return -1;
+            }
+            while (true)
+            {
+                if (closed)
+                {
+                    return -1;
+                }
+                long now = System.nanoTime();
+                Packet head = packets.peekFirst();
+                long readyAt = head == null ? Long.MAX_VALUE : Math.max(head.arrivalNanos, nextBurstNanos);
+                if (head != null && readyAt <= now)
+                {
+                    return take(buffer, now);
+                }
+                if (head == null)
+                {
+                    changed.await();
+                }
+                else
+                {
+                    changed.awaitNanos(readyAt - now);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held and at least one packet ready
+    private int take(byte[] buffer, long now)
+    {
+        int limit = maxBurstSize > 0 ? Math.min(buffer.length, 1 + random.nextInt(maxBurstSize)) : buffer.length;
+        int count = 0;
+        Packet packet;
+        while (count < limit && (packet = packets.peekFirst()) != null && packet.arrivalNanos <= now)
+        {
+            int size = Math.min(limit - count, packet.data.length - packet.offset);
+            System.arraycopy(packet.data, packet.offset, buffer, count, size);
+            packet.offset += size;
+            count += size;
+            if (packet.offset == packet.data.length)
+            {
+                packets.pollFirst();
+            }
+        }
+        if (maxBurstGapNanos > 0)
+        {
+            nextBurstNanos = now + (long) (random.nextDouble() * maxBurstGapNanos);
+        }
+        return count;
+    }
+
+    @Override
+    public int write(byte[] data, int length, int timeoutMillis)
+    {
+        lock.lock();
+        try
+        {
+            if (closed || dropsLink())
+            {
+                return -1;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if (echo)
+        {
+            inject(data, 0, length);
+        }
+        return length;
+    }
+
+    // called with the lock held
+    private boolean dropsLink()
+    {
+        if (disconnectProbability > 0 && random.nextDouble() < disconnectProbability)
+        {
+            closed = true;
+            packets.clear();
+            changed.signalAll();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void configure(SerialPortSettings settings)
+    {
+        baudRate = settings.getBaudRate();
+    }
+
+    @Override
+    public void setBaudRate(int baudRate)
+    {
+        this.baudRate = baudRate;
+    }
+
+    @Override
+    public int getReadPacketSize()
+    {
+        return PACKET_SIZE;
+    }
+
+    @Override
+    public int getWritePacketSize()
+    {
+        return PACKET_SIZE;
+    }
+
+    @Override
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            closed = true;
+            packets.clear();
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private static class Packet
+    {
+        final byte[] data;
+        final long arrivalNanos;
+        int offset = 0;
+
+        Packet(byte[] data, long arrivalNanos)
+        {
+            this.data = data;
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Modbus RTU master of one connection. Requests run one at a time as SerialTransactions,
+ * separated by the 3.5 character bus silence, and take turns between slaves so that
+ * a slave that keeps timing out cannot hold back the others. All state lives on one reactor strand.
+ */
+public class ModbusMaster
+{
+    public interface Callback
+    {
+        void onValues(ModbusRequest request, int[] values);
+
+        void onFailed(int errorCode, String errorMessage);
+    }
+
+    private static final SerialTransaction.LengthResolver RESPONSE_LENGTH = new SerialTransaction.LengthResolver()
+    {
+        @Override
+        public int getResponseLength(byte[] response, int length)
+        {
+            return ModbusRtu.getResponseLength(response, length);
+        }
+    };
+
+    private final SerialConnection connection;
+    private final SerialReactor.Strand strand;
+
+    // strand-confined state
+    private final Map<Integer, ArrayDeque<PendingRequest>> queues = new HashMap<>();
+    // slaves with queued requests, in turn order
+    private final ArrayDeque<Integer> turns = new ArrayDeque<>();
+    private boolean busy = false;
+    private long lastFrameEndNanos = 0;
+
+    public ModbusMaster(SerialConnection connection, SerialReactor.Strand strand)
+    {
+        this.connection = connection;
+        this.strand = strand;
+    }
+
+    public void submit(final ModbusRequest request, final Callback callback)
+    {
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Integer slave = request.getSlave();
+                ArrayDeque<PendingRequest> queue = queues.get(slave);
+                if (queue == null)
+                {
+                    queue = new ArrayDeque<>();
+                    queues.put(slave, queue);
+                }
+                if (queue.isEmpty())
+                {
+                    turns.addLast(slave);
+                }
+                queue.addLast(new PendingRequest(request, callback));
+                sendNext();
+            }
+        });
+    }
+
+    private void sendNext()
+    {
+        if (busy || turns.isEmpty())
+        {
+            return;
+        }
+        Integer slave = turns.pollFirst();
+        ArrayDeque<PendingRequest> queue = queues.get(slave);
+        final PendingRequest pending = queue.pollFirst();
+        if (!queue.isEmpty())
+        {
+            turns.addLast(slave);
+        }
+        busy = true;
+
+        long silenceNanos = ModbusRtu.getFrameSilenceNanos(connection.getSettings().getBaudRate());
+        long delay = lastFrameEndNanos + silenceNanos - System.nanoTime();
+        Runnable send = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                send(pending);
+            }
+        };
+        if (delay > 0)
+        {
+            strand.schedule(send, delay);
+        }
+        else
+        {
+            send.run();
+        }
+    }
+
+    private void send(final PendingRequest pending)
+    {
+        final ModbusRequest request = pending.request;
+        connection.transact(new SerialTransaction(request.toFrame(), new byte[]{(byte) request.getSlave()},
+                request.getTimeoutNanos(), RESPONSE_LENGTH, new SerialTransaction.Callback()
+        {
+            @Override
+            public void onResponse(final byte[] response, final int length)
+            {
+                // the response buffer belongs to this transaction alone, so it can cross strands
+                strand.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        finish();
+                        try
+                        {
+                            pending.callback.onValues(request, request.decode(response, length));
+                        }
+                        catch (ModbusRequest.ResponseException e)
+                        {
+                            pending.callback.onFailed(e.getErrorCode(), e.getMessage());
+                        }
+                        sendNext();
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(final int errorCode, final String errorMessage)
+            {
+                strand.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        finish();
+                        pending.callback.onFailed(errorCode, errorMessage);
+                        sendNext();
+                    }
+                });
+            }
+        }));
+    }
+
+    private void finish()
+    {
+        busy = false;
+        lastFrameEndNanos = System.nanoTime();
+    }
+
+    private static class PendingRequest
+    {
+        final ModbusRequest request;
+        final Callback callback;
+
+        PendingRequest(ModbusRequest request, Callback callback)
+        {
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.melihyarikkaya.rnserialport;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Modbus RTU request: builds its frame and decodes the matching response into values.
+ */
+public class ModbusRequest
+{
+    /**
+     * Thrown by decode(); errorCode is one of the Definitions error codes.
+     */
+    public static class ResponseException extends Exception
+    {
+        private final int errorCode;
+
+        public ResponseException(int errorCode, String message)
+        {
+            super(message);
+            this.errorCode = errorCode;
+        }
+
+        public int getErrorCode()
+        {
+            return errorCode;
+        }
+    }
+
+    private final int slave;
+    private final int function;
+    private final int address;
+    private final int quantity;
+    private final int[] values;
+    private final long timeoutNanos;
+
+    public ModbusRequest(int slave, int function, int address, int quantity, int[] values, long timeoutNanos)
+    {
+        if (slave < ModbusRtu.MIN_SLAVE_ID || slave > ModbusRtu.MAX_SLAVE_ID)
+        {
+            throw new IllegalArgumentException("Slave id must be within 1..247, got " + slave);
+        }
+        if (address < 0 || address > 0xFFFF)
+        {
+            throw new IllegalArgumentException("Address must be within 0..65535, got " + address);
+        }
+        if (timeoutNanos <= 0)
+        {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        switch (function)
+        {
+            case ModbusRtu.READ_COILS:
+            case ModbusRtu.READ_DISCRETE_INPUTS:
+                checkRange("Quantity", quantity, 1, 2000);
+                break;
+            case ModbusRtu.READ_HOLDING_REGISTERS:
+            case ModbusRtu.READ_INPUT_REGISTERS:
+                checkRange("Quantity", quantity, 1, 125);
+                break;
+            case ModbusRtu.WRITE_SINGLE_COIL:
+            case ModbusRtu.WRITE_SINGLE_REGISTER:
+                checkRange("Number of values", values.length, 1, 1);
+                break;
+            case ModbusRtu.WRITE_MULTIPLE_COILS:
+                checkRange("Number of values", values.length, 1, 1968);
+                break;
+            case ModbusRtu.WRITE_MULTIPLE_REGISTERS:
+                checkRange("Number of values", values.length, 1, 123);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported function code " + function);
+        }
+        for (int value : values)
+        {
+            checkRange("Value", value, 0, 0xFFFF);
+        }
+        this.slave = slave;
+        this.function = function;
+        this.address = address;
+        this.quantity = isRead() ? quantity : values.length;
+        this.values = values;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * Keys: slave, function, address, quantity (reads), values (writes), timeout (ms).
+     */
+    public static ModbusRequest fromOptions(ReadableMap options)
+    {
+        int[] values = new int[0];
+        if (options.hasKey("values"))
+        {
+            ReadableArray array = options.getArray("values");
+            values = new int[array.size()];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = array.getInt(i);
+            }
+        }
+        return new ModbusRequest(options.getInt("slave"),
+                options.getInt("function"),
+                options.getInt("address"),
+                options.hasKey("quantity") ? options.getInt("quantity") : 0,
+                values,
+                TimeUnit.MILLISECONDS.toNanos(options.hasKey("timeout") ? options.getInt("timeout")
+                        : SerialPortDefaultSettings.TRANSACTION_TIMEOUT));
+    }
+
+    private static void checkRange(String name, int value, int min, int max)
+    {
+        if (value < min || value > max)
+        {
+            throw new IllegalArgumentException(name + " must be within " + min + ".." + max + ", got " + value);
+        }
+    }
+
+    public int getSlave()
+    {
+        return slave;
+    }
+
+    public int getFunction()
+    {
+        return function;
+    }
+
+    public int getAddress()
+    {
+        return address;
+    }
+
+    public long getTimeoutNanos()
+    {
+        return timeoutNanos;
+    }
+
+    public boolean isRead()
+    {
+        return function <= ModbusRtu.READ_INPUT_REGISTERS;
+    }
+
+    public byte[] toFrame()
+    {
+        byte[] frame;
+        int length;
+        switch (function)
+        {
+            case ModbusRtu.WRITE_SINGLE_COIL:
+            case ModbusRtu.WRITE_SINGLE_REGISTER:
+                int value = function == ModbusRtu.WRITE_SINGLE_COIL ? (values[0] != 0 ? 0xFF00 : 0) : values[0];
+                frame = new byte[8];
+                length = putHeader(frame, value);
+                break;
+            case ModbusRtu.WRITE_MULTIPLE_COILS:
+                int coilBytes = (quantity + 7) / 8;
+                frame = new byte[9 + coilBytes];
+                length = putHeader(frame, quantity);
+                frame[length++] = (byte) coilBytes;
+                for (int i = 0; i < quantity; i++)
+                {
+                    if (values[i] != 0)
+                    {
+                        frame[length + i / 8] |= (byte) (1 << (i % 8));
+                    }
+                }
+                length += coilBytes;
+                break;
+            case ModbusRtu.WRITE_MULTIPLE_REGISTERS:
+                frame = new byte[9 + quantity * 2];
+                length = putHeader(frame, quantity);
+                frame[length++] = (byte) (quantity * 2);
+                for (int i = 0; i < quantity; i++)
+                {
+                    frame[length++] = (byte) (values[i] >>> 8);
+                    frame[length++] = (byte) values[i];
+                }
+                break;
+            default:
+                frame = new byte[8];
+                length = putHeader(frame, quantity);
+                break;
+        }
+        ModbusRtu.appendCrc(frame, length);
+        return frame;
+    }
+
+    // slave, function, address and one 16 bit field
+    private int putHeader(byte[] frame, int field)
+    {
+        frame[0] = (byte) slave;
+        frame[1] = (byte) function;
+        frame[2] = (byte) (address >>> 8);
+        frame[3] = (byte) address;
+        frame[4] = (byte) (field >>> 8);
+        frame[5] = (byte) field;
+        return 6;
+    }
+
+    /**
+     * @return register values, coil states as 0/1, or the written values for write functions
+     */
+    public int[] decode(byte[] response, int length) throws ResponseException
+    {
+        if (!ModbusRtu.hasValidCrc(response, length))
+        {
+            throw new ResponseException(Definitions.ERROR_MODBUS_INVALID_RESPONSE,
+                    Definitions.ERROR_MODBUS_INVALID_RESPONSE_MESSAGE + ": CRC mismatch");
+        }
+        if ((response[0] & 0xFF) != slave)
+        {
+            throw new ResponseException(Definitions.ERROR_MODBUS_INVALID_RESPONSE,
+                    Definitions.ERROR_MODBUS_INVALID_RESPONSE_MESSAGE + ": response from slave " + (response[0] & 0xFF));
+        }
+        int responseFunction = response[1] & 0xFF;
+        if (responseFunction == (function | ModbusRtu.EXCEPTION_FLAG))
+        {
+            throw new ResponseException(Definitions.ERROR_MODBUS_EXCEPTION,
+                    Definitions.ERROR_MODBUS_EXCEPTION_MESSAGE + (response[2] & 0xFF));
+        }
+        if (responseFunction != function)
+        {
+            throw new ResponseException(Definitions.ERROR_MODBUS_INVALID_RESPONSE,
+                    Definitions.ERROR_MODBUS_INVALID_RESPONSE_MESSAGE + ": function " + responseFunction);
+        }
+        if (!isRead())
+        {
+            return values;
+        }
+
+        boolean registers = function == ModbusRtu.READ_HOLDING_REGISTERS || function == ModbusRtu.READ_INPUT_REGISTERS;
+        int byteCount = response[2] & 0xFF;
+        if (byteCount != (registers ? quantity * 2 : (quantity + 7) / 8))
+        {
+            throw new ResponseException(Definitions.ERROR_MODBUS_INVALID_RESPONSE,
+                    Definitions.ERROR_MODBUS_INVALID_RESPONSE_MESSAGE + ": byte count " + byteCount);
+        }
+        int[] result = new int[quantity];
+        for (int i = 0; i < quantity; i++)
+        {
+            result[i] = registers
+                    ? ((response[3 + i * 2] & 0xFF) << 8) | (response[4 + i * 2] & 0xFF)
+                    : (response[3 + i / 8] >> (i % 8)) & 1;
+        }
+        return result;
+    }
+}
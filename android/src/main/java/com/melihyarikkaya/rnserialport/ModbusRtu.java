@@ -0,0 +1,115 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Modbus RTU constants, table-driven CRC16 and inter-frame timing.
+ */
+public final class ModbusRtu
+{
+    public static final int READ_COILS = 0x01;
+    public static final int READ_DISCRETE_INPUTS = 0x02;
+    public static final int READ_HOLDING_REGISTERS = 0x03;
+    public static final int READ_INPUT_REGISTERS = 0x04;
+    public static final int WRITE_SINGLE_COIL = 0x05;
+    public static final int WRITE_SINGLE_REGISTER = 0x06;
+    public static final int WRITE_MULTIPLE_COILS = 0x0F;
+    public static final int WRITE_MULTIPLE_REGISTERS = 0x10;
+
+    public static final int EXCEPTION_FLAG = 0x80;
+    public static final int MIN_SLAVE_ID = 1;
+    public static final int MAX_SLAVE_ID = 247;
+
+    // start, 8 data, parity or second stop, stop bit
+    private static final int BITS_PER_CHARACTER = 11;
+    // fixed silence recommended by the spec above 19200 baud
+    private static final long HIGH_BAUD_SILENCE_NANOS = 1750000L;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++)
+            {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    private ModbusRtu()
+    {
+    }
+
+    public static int crc16(byte[] data, int offset, int length)
+    {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++)
+        {
+            crc = (crc >>> 8) ^ CRC_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Writes the CRC of the first length bytes after them, low byte first.
+     */
+    public static void appendCrc(byte[] frame, int length)
+    {
+        int crc = crc16(frame, 0, length);
+        frame[length] = (byte) crc;
+        frame[length + 1] = (byte) (crc >>> 8);
+    }
+
+    public static boolean hasValidCrc(byte[] frame, int length)
+    {
+        if (length < 4)
+        {
+            return false;
+        }
+        int crc = crc16(frame, 0, length - 2);
+        return (frame[length - 2] & 0xFF) == (crc & 0xFF) && (frame[length - 1] & 0xFF) == (crc >>> 8);
+    }
+
+    /**
+     * Minimum bus silence between frames: 3.5 character times.
+     */
+    public static long getFrameSilenceNanos(int baudRate)
+    {
+        if (baudRate <= 0 || baudRate > 19200)
+        {
+            return HIGH_BAUD_SILENCE_NANOS;
+        }
+        // 3.5 * bits * 1e9 / baud
+        return 35L * BITS_PER_CHARACTER * 100000000L / baudRate;
+    }
+
+    /**
+     * Length of a complete response from its first bytes.
+     *
+     * @return total length including the CRC, or 0 while more bytes are needed to tell
+     */
+    public static int getResponseLength(byte[] response, int length)
+    {
+        if (length < 2)
+        {
+            return 0;
+        }
+        int function = response[1] & 0xFF;
+        if ((function & EXCEPTION_FLAG) != 0)
+        {
+            return 5;
+        }
+        switch (function)
+        {
+            case READ_COILS:
+            case READ_DISCRETE_INPUTS:
+            case READ_HOLDING_REGISTERS:
+            case READ_INPUT_REGISTERS:
+                return length < 3 ? 0 : 5 + (response[2] & 0xFF);
+            default:
+                return 8;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.melihyarikkaya.rnserialport;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_USB_PERMISSION;
+
+/**
+ * Asks the user for USB permission one device at a time.
+ * Driven by requests and the permission broadcast; all state lives on one reactor strand.
+ * A request that gets no answer within the timeout is retried up to maxAttempts times.
+ */
+public class PermissionScheduler
+{
+    public interface Listener
+    {
+        void onPermissionGranted(UsbDevice device);
+
+        void onPermissionDenied(UsbDevice device, boolean timedOut);
+    }
+
+    private final Context context;
+    private final UsbManager usbManager;
+    private final Listener listener;
+    private final SerialReactor.Strand strand;
+    private final long timeoutNanos;
+    private final int maxAttempts;
+
+    // strand-confined state
+    private final LinkedHashMap<String, UsbDevice> waiting = new LinkedHashMap<>();
+    private final Map<String, Integer> attempts = new HashMap<>();
+    private UsbDevice current;
+    private ScheduledFuture<?> timeout;
+    // identifies the request a timeout belongs to, a cancelled timer may still fire
+    private int requestId = 0;
+    private boolean closed = false;
+
+    public PermissionScheduler(Context context, UsbManager usbManager, Listener listener,
+                               SerialReactor reactor, long timeoutMillis, int maxAttempts)
+    {
+        this.context = context;
+        this.usbManager = usbManager;
+        this.listener = listener;
+        this.strand = reactor.newStrand();
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Queues the device unless it is already waiting or being asked for.
+     * Devices the app already has permission for are granted without a dialog.
+     */
+    public void request(final UsbDevice device)
+    {
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                String deviceName = device.getDeviceName();
+                if (closed || waiting.containsKey(deviceName) || isCurrent(deviceName))
+                {
+                    return;
+                }
+                if (usbManager.hasPermission(device))
+                {
+                    listener.onPermissionGranted(device);
+                    return;
+                }
+                waiting.put(deviceName, device);
+                askNext();
+            }
+        });
+    }
+
+    /**
+     * Called with the result of ACTION_USB_PERMISSION; results for devices not being asked for are ignored.
+     */
+    public void onPermissionResult(final UsbDevice device, final boolean granted)
+    {
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (closed || device == null || !isCurrent(device.getDeviceName()))
+                {
+                    return;
+                }
+                finishCurrent();
+                attempts.remove(device.getDeviceName());
+                if (granted)
+                {
+                    listener.onPermissionGranted(device);
+                }
+                else
+                {
+                    listener.onPermissionDenied(device, false);
+                }
+                askNext();
+            }
+        });
+    }
+
+    /**
+     * Forgets the device, e.g. when it is detached while waiting for the dialog.
+     */
+    public void cancel(final String deviceName)
+    {
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                waiting.remove(deviceName);
+                attempts.remove(deviceName);
+                if (isCurrent(deviceName))
+                {
+                    finishCurrent();
+                    askNext();
+                }
+            }
+        });
+    }
+
+    public void shutdown()
+    {
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closed = true;
+                finishCurrent();
+                waiting.clear();
+                attempts.clear();
+            }
+        });
+    }
+
+    private void onTimeout(int timedOutRequestId)
+    {
+        if (closed || current == null || timedOutRequestId != requestId)
+        {
+            return;
+        }
+        UsbDevice device = current;
+        String deviceName = device.getDeviceName();
+        timeout = null;
+        current = null;
+
+        Integer count = attempts.get(deviceName);
+        if (count != null && count >= maxAttempts)
+        {
+            attempts.remove(deviceName);
+            SerialLog.d("Permission request for " + deviceName + " timed out");
+            listener.onPermissionDenied(device, true);
+        }
+        else
+        {
+            SerialLog.d("Permission request for " + deviceName + " timed out, retrying");
+            waiting.put(deviceName, device);
+        }
+        askNext();
+    }
+
+    private boolean isCurrent(String deviceName)
+    {
+        return current != null && current.getDeviceName().equals(deviceName);
+    }
+
+    private void finishCurrent()
+    {
+        if (timeout != null)
+        {
+            timeout.cancel(false);
+            timeout = null;
+        }
+        current = null;
+    }
+
+    private void askNext()
+    {
+        Iterator<UsbDevice> iterator = waiting.values().iterator();
+        while (current == null && !closed && iterator.hasNext())
+        {
+            UsbDevice device = iterator.next();
+            iterator.remove();
+            if (usbManager.hasPermission(device))
+            {
+                attempts.remove(device.getDeviceName());
+                listener.onPermissionGranted(device);
+                continue;
+            }
+
+            Integer count = attempts.get(device.getDeviceName());
+            attempts.put(device.getDeviceName(), count == null ? 1 : count + 1);
+            current = device;
+            SerialLog.d("Sending permission intent for " + device.getDeviceName());
+            PendingIntent permissionIntent = PendingIntent.getBroadcast(context, 0, new Intent(ACTION_USB_PERMISSION), 0);
+            usbManager.requestPermission(device, permissionIntent);
+            final int id = ++requestId;
+            timeout = strand.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    onTimeout(id);
+                }
+            }, timeoutNanos);
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package com.melihyarikkaya.rnserialport;
 
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.facebook.react.bridge.Arguments;
@@ -13,12 +19,14 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.felhr.usbserial.UsbSerialDevice;
 
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -26,14 +34,23 @@ import android.content.IntentFilter;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbManager;
-import android.util.Log;
 
 import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onConnectedEvent;
 import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onConnectionListUpdatedEvent;
 import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onDisconnectedEvent;
 import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onErrorEvent;
+import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onReplayFinished;
+import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onStats;
 import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onUsbPermissionGranted;
-import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.PORT_INTERFACE;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.CAPTURE_BUFFER_SIZE;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.CAPTURE_MAX_FILES;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.CAPTURE_MAX_FILE_SIZE;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.FRAME_TIMEOUT;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.PERMISSION_ATTEMPTS;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.PERMISSION_TIMEOUT;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.SHUTDOWN_TIMEOUT;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.TEXT_CHARSET;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.WRITE_THREADS;
 import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_NO_USB;
 import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_USB_ATTACHED;
 import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_USB_CONNECT;
@@ -48,14 +65,28 @@ import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_USB_PERMIS
 
 public class RNSerialportModule extends ReactContextBaseJavaModule
 {
-    private final Map<String, SerialConnection> serialConnectionMap;
+    // lets the idle timer of a finished replay fire before its connection is closed
+    private static final long REPLAY_CLOSE_GRACE_NANOS = 100000000L;
+
+    private final ConcurrentMap<String, SerialConnection> serialConnectionMap;
+    private final Map<Integer, SerialConnection> connectionsByHandle = new ConcurrentHashMap<>();
 
     private final ReactApplicationContext reactContext;
+    private final EventBatcher eventBatcher;
+    private final SerialReactor reactor;
+    // USB writes block for up to WRITE_TIMEOUT, so they get their own pool and never hold up framing
+    private final SerialReactor writeReactor;
     private UsbManager usbManager;
 
-    private Queue<UsbDevice> pendingPermissions;
-    private AtomicBoolean isPermissionPending = new AtomicBoolean(false);
-    private AtomicReference<String> pendingPerimissionDeviceName = new AtomicReference<>("");
+    private final PermissionScheduler permissionScheduler;
+    private final SerialReactor.Strand statsStrand;
+    private ScheduledFuture<?> statsTimer;
+    private final Map<String, SerialPortSettings> pendingSettings = new ConcurrentHashMap<>();
+    // USB devices being opened on their open thread; opened connections are registered on connectStrand
+    private final Set<String> openingDevices = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final SerialReactor.Strand connectStrand;
+    private volatile boolean destroyed = false;
+    private volatile SerialPortSettings defaultSettings = SerialPortSettings.createDefault();
 
     private boolean usbServiceStarted = false;
 
@@ -69,46 +100,88 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
     {
         super(reactContext);
         this.reactContext = reactContext;
+        this.eventBatcher = new EventBatcher(reactContext);
+        this.reactor = new SerialReactor();
+        this.writeReactor = new SerialReactor(WRITE_THREADS);
+        this.statsStrand = reactor.newStrand();
+        this.connectStrand = reactor.newStrand();
 
-        setFilters();
         usbManager = (UsbManager)reactContext.getSystemService(Context.USB_SERVICE);
 
         serialConnectionMap = new ConcurrentHashMap<>();
-        pendingPermissions = new ConcurrentLinkedQueue<>();
-        Thread permissionThread = new PermissionThread();
-        permissionThread.start();
+        permissionScheduler = new PermissionScheduler(reactContext, usbManager, permissionListener, reactor,
+                PERMISSION_TIMEOUT, PERMISSION_ATTEMPTS);
+        // registered last, the receiver uses everything above
+        setFilters();
     }
 
-    public class PermissionThread extends Thread
+    @Override
+    public void onCatalystInstanceDestroy()
     {
-        @Override
-        public void run()
+        destroyed = true;
+        permissionScheduler.shutdown();
+        setStatsInterval(0);
+        try
+        {
+            reactContext.unregisterReceiver(mUsbReceiver);
+        }
+        catch (IllegalArgumentException e)
         {
-            while(Boolean.TRUE)
+            SerialLog.w("Usb receiver is not registered", e);
+        }
+        for (SerialConnection connection : serialConnectionMap.values())
+        {
+            try
             {
-                try
-                {
-                    Thread.sleep(100);
-                }
-                catch (InterruptedException e)
-                {
-                    e.printStackTrace();
-                }
-                if(!pendingPermissions.isEmpty() && !isPermissionPending.get())
-                {
-                    UsbDevice device = pendingPermissions.poll();
-                    if(device != null)
-                    {
-                        isPermissionPending.set(Boolean.TRUE);
-                        pendingPerimissionDeviceName.set(device.getDeviceName());
-                        Log.d("BOROLIS", "Sending permission intent for " + device.getDeviceName());
-                        requestUserPermission(device);
-                    }
-                }
+                connection.closeConnection();
+            }
+            catch (RuntimeException e)
+            {
+                SerialLog.w("Closing " + connection.getDeviceName() + " failed", e);
             }
         }
+        serialConnectionMap.clear();
+        connectionsByHandle.clear();
+        // lets the strands finish the shutdown and failure tasks queued above, so every promise settles
+        writeReactor.shutdown(SHUTDOWN_TIMEOUT);
+        reactor.shutdown(SHUTDOWN_TIMEOUT);
+        eventBatcher.stop();
     }
 
+    private final PermissionScheduler.Listener permissionListener = new PermissionScheduler.Listener()
+    {
+        @Override
+        public void onPermissionGranted(UsbDevice device)
+        {
+            startConnection(device);
+        }
+
+        @Override
+        public void onPermissionDenied(UsbDevice device, boolean timedOut)
+        {
+            pendingSettings.remove(device.getDeviceName());
+            if (timedOut)
+            {
+                WritableMap map = createError(Definitions.ERROR_PERMISSION_TIMEOUT,
+                        Definitions.ERROR_PERMISSION_TIMEOUT_MESSAGE);
+                map.putString("deviceName", device.getDeviceName());
+                eventEmit(onErrorEvent, map);
+                return;
+            }
+            Intent intent = new Intent(ACTION_USB_PERMISSION_NOT_GRANTED);
+            reactContext.sendBroadcast(intent);
+        }
+    };
+
+    private final SerialConnection.Listener connectionListener = new SerialConnection.Listener()
+    {
+        @Override
+        public void onTransportLost(SerialConnection connection)
+        {
+            removeConnection(connection);
+        }
+    };
+
     private final BroadcastReceiver mUsbReceiver = new BroadcastReceiver()
     {
         @Override
@@ -135,26 +208,27 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
                         Definitions.ERROR_COULD_NOT_OPEN_SERIALPORT_MESSAGE));
                 break;
             case ACTION_USB_ATTACHED:
-                Log.d("BOROLIS", "ACTION_USB_ATTACHED");
+                SerialLog.d("ACTION_USB_ATTACHED");
                 final UsbDevice attachedDevice = arg1.getParcelableExtra(UsbManager.EXTRA_DEVICE);
                 ///TODO если коннекта еще нет, добавить в список пермишенов
                 SerialConnection optionalConnection = getConnectionByName(attachedDevice.getDeviceName());
                 if(optionalConnection == null)
                 {
-                    pendingPermissions.add(attachedDevice);
+                    permissionScheduler.request(attachedDevice);
                 }
 //                connectDevice(attachedDevice.getDeviceName());
                 break;
             case ACTION_USB_DETACHED:
-                Log.d("BOROLIS", "ACTION_USB_DETACHED");
+                SerialLog.d("ACTION_USB_DETACHED");
                 final UsbDevice detachedDevice = arg1.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                permissionScheduler.cancel(detachedDevice.getDeviceName());
                 final SerialConnection detachedConnection = getConnectionByName(detachedDevice.getDeviceName());
                 try{
                     detachedConnection.closeConnection();
                 }
                 catch (Exception e)
                 {
-                    Log.d("BOROLIS", "Connection with device " + detachedDevice.getDeviceName() + " is already closed");
+                    SerialLog.d("Connection with device " + detachedDevice.getDeviceName() + " is already closed");
                 }
                 removeConnectionByName(detachedDevice.getDeviceName());
 //                eventEmit(onDeviceDetachedEvent, null);
@@ -164,28 +238,10 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
 //                }
                 break;
             case ACTION_USB_PERMISSION:
-                boolean granted = arg1.getExtras().getBoolean(UsbManager.EXTRA_PERMISSION_GRANTED);
-                if(granted)
-                {
-                    final UsbDevice permissionDevice = arg1.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-                    Log.d("BOROLIS", "ACTION_USB_PERMISSION: for" + permissionDevice.getDeviceName());
-
-                    ///TODO чекнуть для какого пришел, если нужный
-                    if(pendingPerimissionDeviceName.get().equals(permissionDevice.getDeviceName()))
-                    {
-                        ///TODO isPermissionPending.set(false)
-                        ///TODO startConnection(permissionDevice);
-                        startConnection(permissionDevice);
-                        pendingPerimissionDeviceName.set("");
-                        isPermissionPending.set(Boolean.FALSE);
-                    }
-                }
-                else
-                {
-//                    permissionWaiting.set(false);
-                    Intent intent = new Intent(ACTION_USB_PERMISSION_NOT_GRANTED);
-                    reactContext.sendBroadcast(intent);
-                }
+                boolean granted = arg1.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false);
+                final UsbDevice permissionDevice = arg1.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                SerialLog.d("ACTION_USB_PERMISSION: granted=" + granted);
+                permissionScheduler.onPermissionResult(permissionDevice, granted);
                 break;
             case ACTION_USB_PERMISSION_GRANTED:
                 eventEmit(onUsbPermissionGranted, null);
@@ -242,10 +298,14 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
             SerialConnection serialConnection = entry.getValue();
             UsbDevice device = serialConnection.getDevice();
             WritableMap map = Arguments.createMap();
-            map.putString("name", device.getDeviceName());
-            map.putInt("vendorId", device.getVendorId());
-            map.putInt("productId", device.getProductId());
-            map.putString("serialId", device.getSerialNumber());
+            map.putString("name", serialConnection.getDeviceName());
+            map.putInt("handle", serialConnection.getHandle());
+            if (device != null)
+            {
+                map.putInt("vendorId", device.getVendorId());
+                map.putInt("productId", device.getProductId());
+                map.putString("serialId", device.getSerialNumber());
+            }
 
             deviceList.pushMap(map);
         }
@@ -258,32 +318,253 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
     }
 
     @ReactMethod
-    public void connectDevice(String deviceName)
+    public void connectDevice(String deviceName, ReadableMap options)
     {
-        Log.d("BOROLIS", "connectDevice reactMethod: !!!");
-//        SerialConnection connectionByName = getConnectionByName(deviceName);
-//        if(connectionByName != null)
-//        {
-//            eventEmit(onErrorEvent, createError(Definitions.ERROR_CONNECTION_FAILED,
-//                    Definitions.ERROR_CONNECTION_FAILED_MESSAGE + " Already connected: " + deviceName));
-//            return;
-//        }
-//        try
-//        {
-//            ///TODO send permission request to queue
-//            //requestUserPermission(getDevice(deviceName));
-//        }
-//        catch (Exception err)
-//        {
-//            eventEmit(onErrorEvent, createError(Definitions.ERROR_CONNECTION_FAILED,
-//                    Definitions.ERROR_CONNECTION_FAILED_MESSAGE + " Catch Error Message:" + err.getMessage()));
-//        }
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+        if(connectionByName != null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_SERIALPORT_ALREADY_CONNECTED,
+                    Definitions.ERROR_SERIALPORT_ALREADY_CONNECTED_MESSAGE));
+            return;
+        }
+
+        UsbDevice device = usbManager.getDeviceList().get(deviceName);
+        if (device == null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_X_DEVICE_NOT_FOUND,
+                    Definitions.ERROR_X_DEVICE_NOT_FOUND_MESSAGE + deviceName));
+            return;
+        }
+
+        SerialPortSettings settings;
+        try
+        {
+            settings = SerialPortSettings.fromOptions(options, defaultSettings);
+        }
+        catch (Exception error)
+        {
+            WritableMap map = createError(Definitions.ERROR_INVALID_SERIAL_SETTINGS,
+                    Definitions.ERROR_INVALID_SERIAL_SETTINGS_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+            return;
+        }
+
+        pendingSettings.put(deviceName, settings);
+        permissionScheduler.request(device);
+    }
+
+    /**
+     * Opens a simulated port that echoes written bytes back through the normal read pipeline,
+     * for load testing without hardware.
+     */
+    @ReactMethod
+    public void openLoopback(String deviceName, ReadableMap options)
+    {
+        if (deviceName.isEmpty())
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_CONNECT_DEVICE_NAME_INVALID,
+                    Definitions.ERROR_CONNECT_DEVICE_NAME_INVALID_MESSAGE));
+            return;
+        }
+        if (getConnectionByName(deviceName) != null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_SERIALPORT_ALREADY_CONNECTED,
+                    Definitions.ERROR_SERIALPORT_ALREADY_CONNECTED_MESSAGE));
+            return;
+        }
+
+        SerialPortSettings settings;
+        LoopbackTransport transport;
+        try
+        {
+            settings = SerialPortSettings.fromOptions(options, defaultSettings);
+            transport = new LoopbackTransport(options.hasKey("seed") ? options.getInt("seed") : System.nanoTime());
+            transport.setLatencyMillis(options.hasKey("latency") ? options.getInt("latency") : 0);
+            transport.setBursts(options.hasKey("maxBurstSize") ? options.getInt("maxBurstSize") : 0,
+                    options.hasKey("maxBurstGap") ? options.getInt("maxBurstGap") : 0);
+            transport.setDisconnectProbability(options.hasKey("disconnectProbability")
+                    ? options.getDouble("disconnectProbability") : 0);
+        }
+        catch (Exception error)
+        {
+            WritableMap map = createError(Definitions.ERROR_INVALID_SERIAL_SETTINGS,
+                    Definitions.ERROR_INVALID_SERIAL_SETTINGS_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+            return;
+        }
+
+        SerialConnection serialConnection = new SerialConnection(reactContext, deviceName, null, transport,
+                settings, eventBatcher, reactor, writeReactor, connectionListener);
+        addConnection(serialConnection);
+    }
+
+    /**
+     * Opens a connection that plays back the inbound traffic of capture files.
+     * Options: files (paths, in order), speed (1 real time, 0 as fast as possible), waitForWrites, autoClose,
+     * and the connection settings. Emits onReplayFinished once all recorded data has been read;
+     * with autoClose the connection is then closed as by closeConnection, after one frame timeout
+     * so the last frame still ends on idle.
+     */
+    @ReactMethod
+    public void openReplay(final String deviceName, ReadableMap options)
+    {
+        if (deviceName.isEmpty())
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_CONNECT_DEVICE_NAME_INVALID,
+                    Definitions.ERROR_CONNECT_DEVICE_NAME_INVALID_MESSAGE));
+            return;
+        }
+        if (getConnectionByName(deviceName) != null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_SERIALPORT_ALREADY_CONNECTED,
+                    Definitions.ERROR_SERIALPORT_ALREADY_CONNECTED_MESSAGE));
+            return;
+        }
+
+        SerialPortSettings settings;
+        ReplayTransport transport;
+        AtomicReference<SerialConnection> replayConnection = new AtomicReference<>();
+        try
+        {
+            settings = SerialPortSettings.fromOptions(options, defaultSettings);
+            boolean autoClose = options.hasKey("autoClose") && options.getBoolean("autoClose");
+            ReadableArray paths = options.getArray("files");
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i++)
+            {
+                files.add(new File(paths.getString(i)));
+            }
+            transport = new ReplayTransport(SerialCapture.readRecords(files),
+                    options.hasKey("speed") ? options.getDouble("speed") : 1,
+                    !options.hasKey("waitForWrites") || options.getBoolean("waitForWrites"),
+                    createReplayListener(deviceName, autoClose ? replayConnection : null));
+        }
+        catch (Exception error)
+        {
+            WritableMap map = createError(Definitions.ERROR_REPLAY_FAILED,
+                    Definitions.ERROR_REPLAY_FAILED_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+            return;
+        }
+
+        SerialConnection serialConnection = new SerialConnection(reactContext, deviceName, null, transport,
+                settings, eventBatcher, reactor, writeReactor, connectionListener);
+        replayConnection.set(serialConnection);
+        addConnection(serialConnection);
+    }
+
+    /**
+     * @param autoCloseConnection holds the replay's connection once it is created, null to leave it open
+     */
+    private ReplayTransport.Listener createReplayListener(final String deviceName,
+                                                          final AtomicReference<SerialConnection> autoCloseConnection)
+    {
+        return new ReplayTransport.Listener()
+        {
+            @Override
+            public void onMismatch(long offset, byte[] expected, byte[] actual)
+            {
+                WritableMap map = createError(Definitions.ERROR_REPLAY_MISMATCH,
+                        Definitions.ERROR_REPLAY_MISMATCH_MESSAGE);
+                map.putString("deviceName", deviceName);
+                map.putDouble("offset", offset);
+                map.putString("expected", SerialCodec.hexEncode(expected, 0, expected.length));
+                map.putString("actual", SerialCodec.hexEncode(actual, 0, actual.length));
+                eventEmit(onErrorEvent, map);
+            }
+
+            @Override
+            public void onFinished(long bytes, int chunks, long elapsedNanos, int mismatches)
+            {
+                WritableMap map = Arguments.createMap();
+                map.putString("deviceName", deviceName);
+                map.putDouble("bytes", bytes);
+                map.putInt("chunks", chunks);
+                map.putDouble("elapsed", elapsedNanos / 1e6);
+                map.putDouble("bytesPerSecond", elapsedNanos > 0 ? bytes * 1e9 / elapsedNanos : 0);
+                map.putInt("mismatches", mismatches);
+                eventEmit(onReplayFinished, map);
+                if (autoCloseConnection != null)
+                {
+                    scheduleReplayClose(autoCloseConnection);
+                }
+            }
+        };
+    }
+
+    // the last chunk has been published; its frame is emitted on idle at the latest one frame timeout later
+    private void scheduleReplayClose(final AtomicReference<SerialConnection> replayConnection)
+    {
+        SerialConnection connection = replayConnection.get();
+        long delayNanos = (connection == null ? TimeUnit.MILLISECONDS.toNanos(FRAME_TIMEOUT)
+                : connection.getFrameTimeoutNanos()) + REPLAY_CLOSE_GRACE_NANOS;
+        connectStrand.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SerialConnection connection = replayConnection.get();
+                if (connection != null)
+                {
+                    closeAndRemove(connection);
+                }
+            }
+        }, delayNanos);
+    }
+
+    /**
+     * Settings used for devices connected on attach, without connectDevice.
+     */
+    @ReactMethod
+    public void setDefaultSettings(ReadableMap options)
+    {
+        try
+        {
+            defaultSettings = SerialPortSettings.fromOptions(options, SerialPortSettings.createDefault());
+        }
+        catch (Exception error)
+        {
+            WritableMap map = createError(Definitions.ERROR_INVALID_SERIAL_SETTINGS,
+                    Definitions.ERROR_INVALID_SERIAL_SETTINGS_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+        }
+    }
+
+    @ReactMethod
+    public void setBaudRate(String deviceName, int baudRate, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        if (baudRate <= 0)
+        {
+            promise.reject(String.valueOf(Definitions.ERROR_SET_BAUDRATE_FAILED),
+                    Definitions.ERROR_SET_BAUDRATE_FAILED_MESSAGE + ": " + baudRate);
+            return;
+        }
+        try
+        {
+            connectionByName.setBaudRate(baudRate);
+            promise.resolve(baudRate);
+        }
+        catch (Exception error)
+        {
+            promise.reject(String.valueOf(Definitions.ERROR_SET_BAUDRATE_FAILED),
+                    Definitions.ERROR_SET_BAUDRATE_FAILED_MESSAGE + ": " + error.getMessage());
+        }
     }
 
     @ReactMethod
     public void disconnect()
     {
-        Log.d("BOROLIS", "disconnect reactMethod: !!!");
+        SerialLog.d("disconnect reactMethod: !!!");
 //        if (!usbServiceStarted)
 //        {
 //            eventEmit(onErrorEvent, createError(Definitions.ERROR_USB_SERVICE_NOT_STARTED,
@@ -300,6 +581,37 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
 //        stopConnection();
     }
 
+    /**
+     * Closes the connection and forgets it, so the name can be opened again. Pending writes and
+     * transactions fail. Works for USB, loopback and replay connections; a USB device stays attached.
+     */
+    @ReactMethod
+    public void closeConnection(String deviceName, Promise promise)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+        if (connectionByName == null)
+        {
+            promise.reject(String.valueOf(Definitions.ERROR_THERE_IS_NO_CONNECTION),
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE);
+            return;
+        }
+        closeAndRemove(connectionByName);
+        promise.resolve(true);
+    }
+
+    private void closeAndRemove(SerialConnection connection)
+    {
+        try
+        {
+            connection.closeConnection();
+        }
+        catch (RuntimeException e)
+        {
+            SerialLog.w("Closing " + connection.getDeviceName() + " failed", e);
+        }
+        removeConnection(connection);
+    }
+
     @ReactMethod
     public void startUsbService()
     {
@@ -336,39 +648,39 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
 //        eventEmit(onServiceStopped, null);
     }
 
-@ReactMethod
-  public void writeString(String deviceName, String message)
-  {
-    SerialConnection connectionByName = getConnectionByName(deviceName);
-
-    if(connectionByName == null)
+    @ReactMethod
+    public void setLogLevel(String level, int sampleRate)
     {
-    eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
-            Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
-    return;
+        try
+        {
+            SerialLog.setLevel(level, sampleRate);
+        }
+        catch (Exception error)
+        {
+            WritableMap map = createError(Definitions.ERROR_INVALID_LOG_LEVEL,
+                    Definitions.ERROR_INVALID_LOG_LEVEL_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+        }
     }
 
-    if(!connectionByName.isOpened())
+    @ReactMethod
+    public void setReadMode(String deviceName, int readMode)
     {
-    eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
-            Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
-    return;
-    }
+        SerialConnection connectionByName = getConnectionByName(deviceName);
 
-    if (message.length() < 1)
-    {
-    return;
+        if(connectionByName == null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
+            return;
+        }
+        connectionByName.setReadMode(readMode);
     }
-    connectionByName.writeBytes(message.getBytes());
-  }
-
 
     @ReactMethod
-    public void writeHexString(String deviceName, String message)
+    public void setReturnedDataType(String deviceName, int returnedDataType)
     {
-        ///TODO try to get device by name
-        ///TODO write bytes to device
-
         SerialConnection connectionByName = getConnectionByName(deviceName);
 
         if(connectionByName == null)
@@ -378,49 +690,864 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
             return;
         }
 
-        if(!connectionByName.isOpened())
+        if (returnedDataType != Definitions.RETURNED_DATA_TYPE_INTARRAY
+                && returnedDataType != Definitions.RETURNED_DATA_TYPE_HEXSTRING
+                && returnedDataType != Definitions.RETURNED_DATA_TYPE_BASE64
+                && returnedDataType != Definitions.RETURNED_DATA_TYPE_TEXT)
         {
-            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
-                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_INVALID_RETURNED_DATA_TYPE,
+                    Definitions.ERROR_INVALID_RETURNED_DATA_TYPE_MESSAGE));
             return;
         }
+        connectionByName.setReturnedDataType(returnedDataType);
+    }
 
-        if (message.length() < 1)
+    /**
+     * Options for RETURNED_DATA_TYPE_TEXT: charset (default UTF-8) and lineTerminator.
+     * With a terminator each complete line is emitted on its own, without the terminator.
+     */
+    @ReactMethod
+    public void setTextOptions(String deviceName, ReadableMap options)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+
+        if(connectionByName == null)
         {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
             return;
         }
 
-        byte[] data = new byte[message.length() / 2];
-        for (int i = 0; i < data.length; i++)
+        try
+        {
+            connectionByName.setTextOptions(
+                    Charset.forName(options.hasKey("charset") ? options.getString("charset") : TEXT_CHARSET),
+                    options.hasKey("lineTerminator") ? options.getString("lineTerminator") : null);
+        }
+        catch (IllegalArgumentException error)
         {
-            int index = i * 2;
+            WritableMap map = createError(Definitions.ERROR_INVALID_CHARSET,
+                    Definitions.ERROR_INVALID_CHARSET_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+        }
+    }
 
-            String hex = message.substring(index, index + 2);
+    @ReactMethod
+    public void setFrameDecoder(String deviceName, ReadableMap options)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
 
-            if (Definitions.hexChars.indexOf(hex.substring(0, 1)) == -1
-                    || Definitions.hexChars.indexOf(hex.substring(1, 1)) == -1)
-            {
-                return;
-            }
+        if(connectionByName == null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
+            return;
+        }
 
-            int v = Integer.parseInt(hex, 16);
-            data[i] = (byte)v;
+        try
+        {
+            connectionByName.setFrameDecoder(FrameDecoderFactory.create(options));
+        }
+        catch (Exception error)
+        {
+            WritableMap map = createError(Definitions.ERROR_INVALID_FRAME_DECODER,
+                    Definitions.ERROR_INVALID_FRAME_DECODER_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
         }
-        connectionByName.writeBytes(data);
     }
 
-//    UsbDevice getDevice(String deviceName)
-//    {
-//        HashMap<String, UsbDevice> usbDevices = usbManager.getDeviceList();
-//        if (usbDevices.isEmpty())
-//        {
-//            return null;
-//        }
-//
-//
-//        for (Map.Entry<String, UsbDevice> entry : usbDevices.entrySet())
-//        {
-//            UsbDevice d = entry.getValue();
+    /**
+     * Filters and reduces decoded frames natively before they are emitted; an empty map restores plain emission.
+     */
+    @ReactMethod
+    public void setFrameProcessor(String deviceName, ReadableMap options)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+
+        if(connectionByName == null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
+            return;
+        }
+
+        try
+        {
+            connectionByName.setFrameProcessor(FrameProcessor.fromOptions(options));
+        }
+        catch (Exception error)
+        {
+            WritableMap map = createError(Definitions.ERROR_INVALID_FRAME_PROCESSOR,
+                    Definitions.ERROR_INVALID_FRAME_PROCESSOR_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+        }
+    }
+
+    @ReactMethod
+    public void setFrameTimeout(String deviceName, double timeout, String unit)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+
+        if(connectionByName == null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
+            return;
+        }
+
+        if (timeout <= 0)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_INVALID_FRAME_TIMEOUT,
+                    Definitions.ERROR_INVALID_FRAME_TIMEOUT_MESSAGE));
+            return;
+        }
+
+        if (Definitions.TIME_UNIT_MICROSECONDS.equals(unit))
+        {
+            connectionByName.setFrameTimeoutNanos((long) (timeout * 1000L));
+        }
+        else
+        {
+            connectionByName.setFrameTimeoutNanos((long) (timeout * 1000000L));
+        }
+    }
+
+    /**
+     * Caps the bytes a connection holds while waiting for the end of a frame. On overflow,
+     * flushEarly emits them as a frame, dropOldest and dropNewest drop bytes, and pauseReading stops
+     * draining the read buffer for one frame timeout, so the device is throttled by USB backpressure.
+     */
+    @ReactMethod
+    public void setBufferLimit(String deviceName, int limit, String overflowPolicy)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+
+        if(connectionByName == null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
+            return;
+        }
+
+        try
+        {
+            connectionByName.setBufferLimit(limit, overflowPolicy);
+        }
+        catch (IllegalArgumentException error)
+        {
+            WritableMap map = createError(Definitions.ERROR_INVALID_BUFFER_LIMIT,
+                    Definitions.ERROR_INVALID_BUFFER_LIMIT_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+        }
+    }
+
+    @ReactMethod
+    public void setEventBatching(ReadableMap options)
+    {
+        boolean enabled = !options.hasKey("enabled") || options.getBoolean("enabled");
+        if (!enabled)
+        {
+            eventBatcher.stop();
+            return;
+        }
+
+        try
+        {
+            eventBatcher.configure(
+                    options.hasKey("maxBatchSize") ? options.getInt("maxBatchSize")
+                            : EventBatcher.DEFAULT_MAX_BATCH_SIZE,
+                    options.hasKey("maxDelay") ? options.getInt("maxDelay")
+                            : EventBatcher.DEFAULT_MAX_DELAY,
+                    options.hasKey("maxEventsPerSecond") ? options.getInt("maxEventsPerSecond")
+                            : EventBatcher.DEFAULT_MAX_EVENTS_PER_SECOND,
+                    options.hasKey("maxQueueSize") ? options.getInt("maxQueueSize")
+                            : EventBatcher.DEFAULT_MAX_QUEUE_SIZE,
+                    options.hasKey("overflowPolicy") ? options.getString("overflowPolicy")
+                            : EventBatcher.OVERFLOW_DROP_OLDEST);
+        }
+        catch (Exception error)
+        {
+            WritableMap map = createError(Definitions.ERROR_INVALID_EVENT_BATCHING,
+                    Definitions.ERROR_INVALID_EVENT_BATCHING_MESSAGE);
+            map.putString("exceptionErrorMessage", error.getMessage());
+            eventEmit(onErrorEvent, map);
+            return;
+        }
+        eventBatcher.start();
+    }
+
+    @ReactMethod
+    public void getEventBatchingStats(Promise promise)
+    {
+        WritableMap map = Arguments.createMap();
+        map.putBoolean("enabled", eventBatcher.isEnabled());
+        map.putInt("queued", eventBatcher.getQueuedEvents());
+        map.putDouble("dropped", eventBatcher.getDroppedEvents());
+        map.putDouble("emitted", eventBatcher.getEmittedEvents());
+        map.putDouble("batches", eventBatcher.getEmittedBatches());
+        promise.resolve(map);
+    }
+
+    @ReactMethod
+    public void getStats(String deviceName, Promise promise)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+        if (connectionByName == null)
+        {
+            promise.reject(String.valueOf(Definitions.ERROR_THERE_IS_NO_CONNECTION),
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE);
+            return;
+        }
+        promise.resolve(createStatsMap(connectionByName));
+    }
+
+    /**
+     * Emits onStats with the stats of every connection each interval; 0 stops it.
+     */
+    @ReactMethod
+    public synchronized void setStatsInterval(int intervalMillis)
+    {
+        if (statsTimer != null)
+        {
+            statsTimer.cancel(false);
+            statsTimer = null;
+        }
+        if (intervalMillis <= 0)
+        {
+            return;
+        }
+        statsTimer = statsStrand.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (serialConnectionMap.isEmpty())
+                {
+                    return;
+                }
+                WritableArray array = Arguments.createArray();
+                for (SerialConnection connection : serialConnectionMap.values())
+                {
+                    array.pushMap(createStatsMap(connection));
+                }
+                eventEmit(onStats, array);
+            }
+        }, TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+    }
+
+    private WritableMap createStatsMap(SerialConnection connection)
+    {
+        SerialConnectionStats stats = connection.getStats();
+        WritableMap map = Arguments.createMap();
+        map.putString("deviceName", connection.getDeviceName());
+        map.putDouble("bytesIn", stats.getBytesIn());
+        map.putDouble("bytesOut", stats.getBytesOut());
+        map.putDouble("framesIn", stats.getFramesIn());
+        map.putDouble("framesOut", stats.getFramesOut());
+        map.putDouble("droppedBytes", stats.getDroppedBytes());
+        map.putDouble("droppedEvents", stats.getDroppedEvents());
+        map.putDouble("failedWrites", stats.getFailedWrites());
+        map.putDouble("bufferHighWaterMark", stats.getBufferHighWaterMark());
+        map.putDouble("bufferOverflows", stats.getBufferOverflows());
+        map.putInt("writeQueueDepth", connection.getWriteQueueDepth());
+        map.putMap("emitLatency", createHistogramMap(stats.getEmitLatency()));
+        map.putMap("writeLatency", createHistogramMap(stats.getWriteLatency()));
+        return map;
+    }
+
+    private WritableMap createHistogramMap(LatencyHistogram histogram)
+    {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("count", histogram.getCount());
+        map.putDouble("mean", histogram.getMeanMicros());
+        map.putDouble("p50", histogram.getPercentileMicros(50));
+        map.putDouble("p90", histogram.getPercentileMicros(90));
+        map.putDouble("p99", histogram.getPercentileMicros(99));
+        map.putDouble("max", histogram.getMaxMicros());
+        return map;
+    }
+
+    @ReactMethod
+    public void writeString(String deviceName, String message, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        if (message.length() < 1)
+        {
+            promise.resolve(0);
+            return;
+        }
+        connectionByName.writeBytes(message.getBytes(Charset.forName(TEXT_CHARSET)), createWriteCallback(promise));
+    }
+
+    /**
+     * Like writeString, encoding the message in the given charset, e.g. "US-ASCII" or "ISO-8859-1".
+     */
+    @ReactMethod
+    public void writeEncodedString(String deviceName, String message, String charset, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        byte[] data;
+        try
+        {
+            data = message.getBytes(Charset.forName(charset));
+        }
+        catch (IllegalArgumentException error)
+        {
+            rejectInvalidPayload(promise, Definitions.ERROR_INVALID_CHARSET,
+                    Definitions.ERROR_INVALID_CHARSET_MESSAGE, error);
+            return;
+        }
+        if (data.length < 1)
+        {
+            promise.resolve(0);
+            return;
+        }
+        connectionByName.writeBytes(data, createWriteCallback(promise));
+    }
+
+
+    @ReactMethod
+    public void writeHexString(String deviceName, String message, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        if (message.length() < 1)
+        {
+            promise.resolve(0);
+            return;
+        }
+
+        byte[] data;
+        try
+        {
+            data = SerialCodec.hexDecode(message);
+        }
+        catch (IllegalArgumentException error)
+        {
+            rejectInvalidPayload(promise, Definitions.ERROR_INVALID_HEX_STRING,
+                    Definitions.ERROR_INVALID_HEX_STRING_MESSAGE, error);
+            return;
+        }
+        connectionByName.writeBytes(data, createWriteCallback(promise));
+    }
+
+    @ReactMethod
+    public void writeBase64(String deviceName, String message, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        if (message.length() < 1)
+        {
+            promise.resolve(0);
+            return;
+        }
+
+        byte[] data;
+        try
+        {
+            data = SerialCodec.base64Decode(message);
+        }
+        catch (IllegalArgumentException error)
+        {
+            rejectInvalidPayload(promise, Definitions.ERROR_INVALID_BASE64_STRING,
+                    Definitions.ERROR_INVALID_BASE64_STRING_MESSAGE, error);
+            return;
+        }
+        connectionByName.writeBytes(data, createWriteCallback(promise));
+    }
+
+    /**
+     * Resolves the integer handle of an open connection, for writeMany and writeBatch.
+     */
+    @ReactMethod
+    public void getHandle(String deviceName, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName != null)
+        {
+            promise.resolve(connectionByName.getHandle());
+        }
+    }
+
+    /**
+     * Queues the same payload on every connection in one bridge call and resolves with one result
+     * per handle, in order: {handle, status, bytesWritten} or {handle, status, errorCode, errorMessage}.
+     * Payload is a hex string unless options.payloadEncoding is "base64" or "string".
+     */
+    @ReactMethod
+    public void writeMany(ReadableArray handles, String payload, ReadableMap options, Promise promise)
+    {
+        byte[] data = decodePayload(payload, options, promise);
+        if (data == null)
+        {
+            return;
+        }
+        int[] handleArray = new int[handles.size()];
+        for (int i = 0; i < handleArray.length; i++)
+        {
+            if (handles.getType(i) != ReadableType.Number)
+            {
+                rejectInvalidBatchEntry(promise, i, "handle must be a number");
+                return;
+            }
+            handleArray[i] = handles.getInt(i);
+        }
+        WriteBatch batch = new WriteBatch(handleArray, promise);
+        for (int i = 0; i < handleArray.length; i++)
+        {
+            writeBatchEntry(batch, i, handleArray[i], data);
+        }
+    }
+
+    /**
+     * Like writeMany with a payload per connection: writes is [{handle, payload, payloadEncoding}].
+     * A malformed entry or undecodable payload rejects the whole batch before anything is written,
+     * with ERROR_INVALID_WRITE_BATCH naming the entry's index for malformed entries.
+     */
+    @ReactMethod
+    public void writeBatch(ReadableArray writes, Promise promise)
+    {
+        int[] handleArray = new int[writes.size()];
+        byte[][] payloads = new byte[handleArray.length][];
+        for (int i = 0; i < handleArray.length; i++)
+        {
+            String problem = checkBatchEntry(writes, i);
+            if (problem != null)
+            {
+                rejectInvalidBatchEntry(promise, i, problem);
+                return;
+            }
+            ReadableMap write = writes.getMap(i);
+            handleArray[i] = write.getInt("handle");
+            payloads[i] = decodePayload(write.getString("payload"), write, promise);
+            if (payloads[i] == null)
+            {
+                return;
+            }
+        }
+        WriteBatch batch = new WriteBatch(handleArray, promise);
+        for (int i = 0; i < handleArray.length; i++)
+        {
+            writeBatchEntry(batch, i, handleArray[i], payloads[i]);
+        }
+    }
+
+    /**
+     * @return what is wrong with the entry, or null when it can be written
+     */
+    private String checkBatchEntry(ReadableArray writes, int index)
+    {
+        if (writes.getType(index) != ReadableType.Map)
+        {
+            return "entry must be an object";
+        }
+        ReadableMap write = writes.getMap(index);
+        if (!write.hasKey("handle") || write.getType("handle") != ReadableType.Number)
+        {
+            return "handle must be a number";
+        }
+        if (!write.hasKey("payload") || write.getType("payload") != ReadableType.String)
+        {
+            return "payload must be a string";
+        }
+        if (write.hasKey("payloadEncoding") && write.getType("payloadEncoding") != ReadableType.String)
+        {
+            return "payloadEncoding must be a string";
+        }
+        return null;
+    }
+
+    private void rejectInvalidBatchEntry(Promise promise, int index, String problem)
+    {
+        String message = Definitions.ERROR_INVALID_WRITE_BATCH_MESSAGE + " at index " + index + ": " + problem;
+        WritableMap map = createError(Definitions.ERROR_INVALID_WRITE_BATCH, message);
+        map.putInt("index", index);
+        eventEmit(onErrorEvent, map);
+        promise.reject(String.valueOf(Definitions.ERROR_INVALID_WRITE_BATCH), message);
+    }
+
+    private void writeBatchEntry(WriteBatch batch, int index, int handle, byte[] data)
+    {
+        SerialConnection connection = getConnectionByHandle(handle);
+        if (connection == null || !connection.isOpened())
+        {
+            batch.fail(index, Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE);
+            return;
+        }
+        connection.writeBytes(data, batch.callback(index));
+    }
+
+    /**
+     * Writes the payload and resolves with the response, in the same shape as onReadDataFromPort.
+     * Payload is a hex string unless options.payloadEncoding is "base64" or "string".
+     */
+    @ReactMethod
+    public void transact(String deviceName, String payload, ReadableMap options, Promise promise)
+    {
+        final SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        byte[] data = decodePayload(payload, options, promise);
+        if (data == null)
+        {
+            return;
+        }
+
+        SerialTransaction transaction;
+        try
+        {
+            transaction = SerialTransaction.fromOptions(data, options,
+                    createTransactionCallback(connectionByName, promise));
+        }
+        catch (Exception error)
+        {
+            rejectInvalidPayload(promise, Definitions.ERROR_INVALID_TRANSACTION,
+                    Definitions.ERROR_INVALID_TRANSACTION_MESSAGE, error);
+            return;
+        }
+        connectionByName.transact(transaction);
+    }
+
+    /**
+     * Sends the payload every options.period ms and emits responses as onPollData with the poll id.
+     * Accepts the transact options; with options.changesOnly, only responses that differ from the previous one
+     * are emitted. Resolves with the poll id.
+     */
+    @ReactMethod
+    public void startPolling(String deviceName, String payload, ReadableMap options, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        byte[] data = decodePayload(payload, options, promise);
+        if (data == null)
+        {
+            return;
+        }
+
+        int pollId;
+        try
+        {
+            SerialTransaction prototype = SerialTransaction.fromOptions(data, options, null);
+            pollId = connectionByName.getPoller().start(prototype,
+                    TimeUnit.MILLISECONDS.toNanos(options.getInt("period")),
+                    options.hasKey("changesOnly") && options.getBoolean("changesOnly"));
+        }
+        catch (Exception error)
+        {
+            rejectInvalidPayload(promise, Definitions.ERROR_INVALID_POLL,
+                    Definitions.ERROR_INVALID_POLL_MESSAGE, error);
+            return;
+        }
+        promise.resolve(pollId);
+    }
+
+    @ReactMethod
+    public void pausePolling(String deviceName, int pollId)
+    {
+        SerialPoller poller = getPoller(deviceName);
+        if (poller != null && !poller.pause(pollId))
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_POLL_NOT_FOUND,
+                    Definitions.ERROR_POLL_NOT_FOUND_MESSAGE));
+        }
+    }
+
+    @ReactMethod
+    public void resumePolling(String deviceName, int pollId)
+    {
+        SerialPoller poller = getPoller(deviceName);
+        if (poller != null && !poller.resume(pollId))
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_POLL_NOT_FOUND,
+                    Definitions.ERROR_POLL_NOT_FOUND_MESSAGE));
+        }
+    }
+
+    @ReactMethod
+    public void stopPolling(String deviceName, int pollId)
+    {
+        SerialPoller poller = getPoller(deviceName);
+        if (poller != null && !poller.stop(pollId))
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_POLL_NOT_FOUND,
+                    Definitions.ERROR_POLL_NOT_FOUND_MESSAGE));
+        }
+    }
+
+    private SerialPoller getPoller(String deviceName)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+        if (connectionByName == null)
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
+            return null;
+        }
+        return connectionByName.getPoller();
+    }
+
+    /**
+     * Decodes a hex payload, or base64/string ones by options.payloadEncoding.
+     *
+     * @return null after rejecting the promise when the payload does not decode
+     */
+    private byte[] decodePayload(String payload, ReadableMap options, Promise promise)
+    {
+        String encoding = options.hasKey("payloadEncoding") ? options.getString("payloadEncoding") : "hex";
+        try
+        {
+            if ("base64".equals(encoding))
+            {
+                return SerialCodec.base64Decode(payload);
+            }
+            if ("string".equals(encoding))
+            {
+                return payload.getBytes(Charset.forName(TEXT_CHARSET));
+            }
+            return SerialCodec.hexDecode(payload);
+        }
+        catch (IllegalArgumentException error)
+        {
+            boolean base64 = "base64".equals(encoding);
+            rejectInvalidPayload(promise,
+                    base64 ? Definitions.ERROR_INVALID_BASE64_STRING : Definitions.ERROR_INVALID_HEX_STRING,
+                    base64 ? Definitions.ERROR_INVALID_BASE64_STRING_MESSAGE : Definitions.ERROR_INVALID_HEX_STRING_MESSAGE,
+                    error);
+            return null;
+        }
+    }
+
+    private SerialTransaction.Callback createTransactionCallback(final SerialConnection connection,
+                                                                 final Promise promise)
+    {
+        return new SerialTransaction.Callback()
+        {
+            @Override
+            public void onResponse(byte[] response, int length)
+            {
+                promise.resolve(connection.createDataMap(response, 0, length));
+            }
+
+            @Override
+            public void onFailed(int errorCode, String errorMessage)
+            {
+                promise.reject(String.valueOf(errorCode), errorMessage);
+            }
+        };
+    }
+
+    /**
+     * Runs a Modbus RTU request and resolves with {slave, function, address, values}.
+     * Modbus exceptions reject with ERROR_MODBUS_EXCEPTION.
+     */
+    @ReactMethod
+    public void modbusRequest(String deviceName, ReadableMap options, final Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        ModbusRequest request;
+        try
+        {
+            request = ModbusRequest.fromOptions(options);
+        }
+        catch (Exception error)
+        {
+            rejectInvalidPayload(promise, Definitions.ERROR_INVALID_MODBUS_REQUEST,
+                    Definitions.ERROR_INVALID_MODBUS_REQUEST_MESSAGE, error);
+            return;
+        }
+        connectionByName.getModbusMaster().submit(request, new ModbusMaster.Callback()
+        {
+            @Override
+            public void onValues(ModbusRequest request, int[] values)
+            {
+                WritableArray array = Arguments.createArray();
+                for (int value : values)
+                {
+                    array.pushInt(value);
+                }
+                WritableMap map = Arguments.createMap();
+                map.putInt("slave", request.getSlave());
+                map.putInt("function", request.getFunction());
+                map.putInt("address", request.getAddress());
+                map.putArray("values", array);
+                promise.resolve(map);
+            }
+
+            @Override
+            public void onFailed(int errorCode, String errorMessage)
+            {
+                promise.reject(String.valueOf(errorCode), errorMessage);
+            }
+        });
+    }
+
+    /**
+     * Records the connection's raw traffic to rotating files and resolves with the path of the first one.
+     * Options: directory (default files dir/serial-capture), maxFileSize, maxFiles, bufferSize (bytes).
+     */
+    @ReactMethod
+    public void startCapture(String deviceName, ReadableMap options, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+
+        SerialCapture capture;
+        try
+        {
+            File directory = options.hasKey("directory")
+                    ? new File(options.getString("directory"))
+                    : new File(reactContext.getFilesDir(), "serial-capture");
+            capture = new SerialCapture(directory, deviceName,
+                    options.hasKey("maxFileSize") ? (long) options.getDouble("maxFileSize") : CAPTURE_MAX_FILE_SIZE,
+                    options.hasKey("maxFiles") ? options.getInt("maxFiles") : CAPTURE_MAX_FILES,
+                    options.hasKey("bufferSize") ? options.getInt("bufferSize") : CAPTURE_BUFFER_SIZE);
+        }
+        catch (Exception error)
+        {
+            rejectInvalidPayload(promise, Definitions.ERROR_CAPTURE_FAILED,
+                    Definitions.ERROR_CAPTURE_FAILED_MESSAGE, error);
+            return;
+        }
+        connectionByName.startCapture(capture);
+        promise.resolve(capture.getCurrentFile().getAbsolutePath());
+    }
+
+    /**
+     * Resolves with {files, capturedBytes, droppedBytes}; files are the capture files still on disk, oldest first.
+     * Rejects with ERROR_CAPTURE_FAILED when writing stopped early.
+     */
+    @ReactMethod
+    public void stopCapture(String deviceName, Promise promise)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+        SerialCapture capture = connectionByName == null ? null : connectionByName.stopCapture();
+        if (capture == null)
+        {
+            promise.reject(String.valueOf(Definitions.ERROR_CAPTURE_NOT_RUNNING),
+                    Definitions.ERROR_CAPTURE_NOT_RUNNING_MESSAGE);
+            return;
+        }
+        if (capture.getFailure() != null)
+        {
+            rejectInvalidPayload(promise, Definitions.ERROR_CAPTURE_FAILED,
+                    Definitions.ERROR_CAPTURE_FAILED_MESSAGE, capture.getFailure());
+            return;
+        }
+
+        WritableArray files = Arguments.createArray();
+        for (File file : capture.getFiles())
+        {
+            files.pushString(file.getAbsolutePath());
+        }
+        WritableMap map = Arguments.createMap();
+        map.putArray("files", files);
+        map.putDouble("capturedBytes", capture.getCapturedBytes());
+        map.putDouble("droppedBytes", capture.getDroppedBytes());
+        promise.resolve(map);
+    }
+
+    @ReactMethod
+    public void flush(String deviceName, Promise promise)
+    {
+        SerialConnection connectionByName = getOpenedConnection(deviceName, promise);
+        if (connectionByName == null)
+        {
+            return;
+        }
+        connectionByName.flush(createWriteCallback(promise));
+    }
+
+    private SerialConnection getOpenedConnection(String deviceName, Promise promise)
+    {
+        SerialConnection connectionByName = getConnectionByName(deviceName);
+
+        if(connectionByName == null || !connectionByName.isOpened())
+        {
+            eventEmit(onErrorEvent, createError(Definitions.ERROR_THERE_IS_NO_CONNECTION,
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE));
+            promise.reject(String.valueOf(Definitions.ERROR_THERE_IS_NO_CONNECTION),
+                    Definitions.ERROR_THERE_IS_NO_CONNECTION_MESSAGE);
+            return null;
+        }
+        return connectionByName;
+    }
+
+    private void rejectInvalidPayload(Promise promise, int code, String message, Exception error)
+    {
+        WritableMap map = createError(code, message);
+        map.putString("exceptionErrorMessage", error.getMessage());
+        eventEmit(onErrorEvent, map);
+        promise.reject(String.valueOf(code), message + ": " + error.getMessage());
+    }
+
+    private SerialWriter.WriteCallback createWriteCallback(final Promise promise)
+    {
+        return new SerialWriter.WriteCallback()
+        {
+            @Override
+            public void onWritten(int bytesWritten)
+            {
+                promise.resolve(bytesWritten);
+            }
+
+            @Override
+            public void onFailed(int errorCode, String errorMessage)
+            {
+                promise.reject(String.valueOf(errorCode), errorMessage);
+            }
+        };
+    }
+
+//    UsbDevice getDevice(String deviceName)
+//    {
+//        HashMap<String, UsbDevice> usbDevices = usbManager.getDeviceList();
+//        if (usbDevices.isEmpty())
+//        {
+//            return null;
+//        }
+//
+//
+//        for (Map.Entry<String, UsbDevice> entry : usbDevices.entrySet())
+//        {
+//            UsbDevice d = entry.getValue();
 //
 //            if (d.getDeviceName().equals(deviceName))
 //            {
@@ -455,18 +1582,6 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
         }
     }
 
-    private void requestUserPermission(UsbDevice device)
-    {
-        if(getConnectionByName(device.getDeviceName()) != null)
-        {
-            Log.d("BOROLIS", "requestUserPermission: Connection with device already exists, need not to ask permission");
-            return;
-        }
-
-        PendingIntent mPendingIntent = PendingIntent.getBroadcast(reactContext, 0, new Intent(ACTION_USB_PERMISSION),0);
-        usbManager.requestPermission(device, mPendingIntent);
-    }
-
     private void setFilters()
     {
         IntentFilter filter = new IntentFilter();
@@ -483,24 +1598,74 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
         reactContext.registerReceiver(mUsbReceiver, filter);
     }
 
-    private void startConnection(UsbDevice device)
+    /**
+     * Opening a USB device blocks on control transfers, so it runs on a thread of its own
+     * rather than on the permission strand; the opened connection is registered on connectStrand.
+     */
+    private void startConnection(final UsbDevice device)
     {
-        SerialConnection connectionByName = getConnectionByName(device.getDeviceName());
-        if(connectionByName != null)
+        final String deviceName = device.getDeviceName();
+        if (getConnectionByName(deviceName) != null || !openingDevices.add(deviceName))
         {
-            Log.d("BOROLIS", "Connection with device " + connectionByName.getDeviceName() + " already started");
+            SerialLog.d("Connection with device " + deviceName + " already started");
             return;
         }
+        new Thread("SerialOpen-" + deviceName)
+        {
+            @Override
+            public void run()
+            {
+                final SerialConnection serialConnection = openConnection(device);
+                if (serialConnection == null)
+                {
+                    openingDevices.remove(deviceName);
+                    return;
+                }
+                connectStrand.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        openingDevices.remove(deviceName);
+                        if (destroyed)
+                        {
+                            serialConnection.closeConnection();
+                            return;
+                        }
+                        addConnection(serialConnection);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    /**
+     * @return null when the device could not be opened, the error has been emitted then
+     */
+    private SerialConnection openConnection(UsbDevice device)
+    {
         try
         {
-            UsbDeviceConnection connection = usbManager.openDevice(device);
-            UsbSerialDevice serialPort = UsbSerialDevice.createUsbSerialDevice(device, connection, PORT_INTERFACE);
+            SerialPortSettings settings = pendingSettings.remove(device.getDeviceName());
+            if (settings == null)
+            {
+                settings = defaultSettings;
+            }
 
-            SerialConnection serialConnection = new SerialConnection(reactContext, device.getDeviceName(), device, connection, serialPort);
-            serialConnectionMap.put(serialConnection.getDeviceName(), serialConnection);
-            Intent intent = new Intent(ACTION_USB_CONNECTION_LIST_UPDATED);
-            reactContext.sendBroadcast(intent);
+            UsbDeviceConnection connection = usbManager.openDevice(device);
+            UsbSerialDevice serialPort = settings.createSerialDevice(device, connection);
+            if (serialPort == null)
+            {
+                connection.close();
+                eventEmit(onErrorEvent, createError(Definitions.ERROR_DEVICE_NOT_SUPPORTED,
+                        Definitions.ERROR_DEVICE_NOT_SUPPORTED_MESSAGE));
+                return null;
+            }
 
+            UsbSerialTransport transport = new UsbSerialTransport(device, connection, serialPort,
+                    settings.getPortInterface());
+            return new SerialConnection(reactContext, device.getDeviceName(), device, transport, settings,
+                    eventBatcher, reactor, writeReactor, connectionListener);
         }
         catch (Exception error)
         {
@@ -508,30 +1673,56 @@ public class RNSerialportModule extends ReactContextBaseJavaModule
                     Definitions.ERROR_CONNECTION_FAILED_MESSAGE);
             map.putString("exceptionErrorMessage", error.getMessage());
             eventEmit(onErrorEvent, map);
+            return null;
         }
     }
 
-    public SerialConnection getConnectionByName(String deviceName)
+    private void addConnection(SerialConnection serialConnection)
     {
-        for (Map.Entry<String, SerialConnection> connection: serialConnectionMap.entrySet()) {
-            if(connection.getKey().equals(deviceName))
-            {
-                return connection.getValue();
-            }
+        if (!serialConnection.isOpened())
+        {
+            // the connection has reported ACTION_USB_NOT_OPENED already, only the device has to be let go
+            serialConnection.getTransport().close();
+            return;
         }
-        return null;
+        serialConnectionMap.put(serialConnection.getDeviceName(), serialConnection);
+        connectionsByHandle.put(serialConnection.getHandle(), serialConnection);
+        Intent intent = new Intent(ACTION_USB_CONNECTION_LIST_UPDATED);
+        reactContext.sendBroadcast(intent);
+        if (!serialConnection.isOpened())
+        {
+            // the transport was lost before the connection was registered, its listener found nothing to remove
+            removeConnection(serialConnection);
+        }
+    }
+
+    public SerialConnection getConnectionByName(String deviceName)
+    {
+        return deviceName == null ? null : serialConnectionMap.get(deviceName);
+    }
+
+    public SerialConnection getConnectionByHandle(int handle)
+    {
+        return connectionsByHandle.get(handle);
     }
 
     public void removeConnectionByName(String deviceName)
     {
-        for (Map.Entry<String, SerialConnection> connection: serialConnectionMap.entrySet()) {
-            if(connection.getKey().equals(deviceName))
-            {
-                serialConnectionMap.remove(connection.getKey());
-                Intent intent = new Intent(ACTION_USB_CONNECTION_LIST_UPDATED);
-                reactContext.sendBroadcast(intent);
-                return;
-            }
+        SerialConnection connection = getConnectionByName(deviceName);
+        if (connection != null)
+        {
+            removeConnection(connection);
+        }
+    }
+
+    // ConcurrentMap.remove(key, value) leaves a newer connection registered under the same name in place
+    private void removeConnection(SerialConnection connection)
+    {
+        if (serialConnectionMap.remove(connection.getDeviceName(), connection))
+        {
+            connectionsByHandle.remove(connection.getHandle());
+            Intent intent = new Intent(ACTION_USB_CONNECTION_LIST_UPDATED);
+            reactContext.sendBroadcast(intent);
         }
     }
 
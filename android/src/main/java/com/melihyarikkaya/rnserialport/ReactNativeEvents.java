@@ -11,5 +11,11 @@ public class ReactNativeEvents {
     public static final String onServiceStarted = "onServiceStarted";
     public static final String onServiceStopped = "onServiceStopped";
     public static final String onReadDataFromPort = "onReadDataFromPort";
+    public static final String onReadDataBatch = "onReadDataBatch";
     public static final String onUsbPermissionGranted = "onUsbPermissionGranted";
+    public static final String onStats = "onStats";
+    public static final String onPollData = "onPollData";
+    public static final String onFrameAggregate = "onFrameAggregate";
+    public static final String onReplayFinished = "onReplayFinished";
+    public static final String onBufferOverflow = "onBufferOverflow";
 }
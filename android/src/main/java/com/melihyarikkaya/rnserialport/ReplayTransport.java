@@ -0,0 +1,311 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SerialTransport that plays back the inbound chunks of a SerialCapture recording, one read per recorded chunk.
+ *
+ * Chunks are spaced as recorded, divided by speed; speed 0 plays them as fast as the pipeline takes them.
+ * With waitForWrites, a chunk recorded after an outbound write is held back until the app has written
+ * that much, and its timing restarts from that write, so request/response sessions replay in the same order.
+ * Writes are compared byte by byte with the recorded outbound stream and mismatches reported to the listener.
+ * DROPPED records carry no data and are skipped.
+ */
+public class ReplayTransport implements SerialTransport
+{
+    public interface Listener
+    {
+        /**
+         * @param offset position of the write in the recorded outbound stream
+         * @param expected recorded bytes at that position, shorter than actual when the recording ends first
+         */
+        void onMismatch(long offset, byte[] expected, byte[] actual);
+
+        /**
+         * Called on the read thread when it comes back for more after the last inbound chunk,
+         * so that chunk has been handed on already.
+         */
+        void onFinished(long bytes, int chunks, long elapsedNanos, int mismatches);
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private final byte[][] inbound;
+    private final long[] inboundTimestamps;
+    // outbound bytes recorded before each inbound chunk
+    private final long[] inboundGates;
+    private final byte[] outbound;
+    private final long[] outboundEnds;
+    private final long[] outboundTimestamps;
+    private final int maxChunkSize;
+    private final double speed;
+    private final boolean waitForWrites;
+    private final Listener listener;
+
+    // guarded by lock
+    private int nextInbound = 0;
+    private int inboundOffset = 0;
+    private int nextOutbound = 0;
+    private long written = 0;
+    private int mismatches = 0;
+    private long anchorNanos;
+    private long anchorTimestamp;
+    private long startNanos;
+    private long bytesRead = 0;
+    private long finishedNanos;
+    private volatile boolean finished = false;
+    private boolean closed = false;
+    // read thread only
+    private boolean finishReported = false;
+
+    /**
+     * @param speed 1 for real time, 10 for ten times faster, 0 for as fast as possible
+     */
+    public ReplayTransport(List<SerialCapture.Record> records, double speed, boolean waitForWrites,
+                           Listener listener)
+    {
+        if (speed < 0 || Double.isNaN(speed))
+        {
+            throw new IllegalArgumentException("Speed cannot be negative");
+        }
+        List<SerialCapture.Record> in = new ArrayList<>();
+        List<Long> gates = new ArrayList<>();
+        List<Long> ends = new ArrayList<>();
+        List<Long> outTimestamps = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (SerialCapture.Record record : records)
+        {
+            if (record.type == SerialCapture.RECORD_IN && record.length > 0)
+            {
+                in.add(record);
+                gates.add((long) out.size());
+            }
+            else if (record.type == SerialCapture.RECORD_OUT)
+            {
+                out.write(record.data, 0, record.length);
+                ends.add((long) out.size());
+                outTimestamps.add(record.timestampNanos);
+            }
+        }
+
+        this.inbound = new byte[in.size()][];
+        this.inboundTimestamps = new long[in.size()];
+        this.inboundGates = new long[in.size()];
+        int maxSize = LoopbackTransport.PACKET_SIZE;
+        for (int i = 0; i < inbound.length; i++)
+        {
+            maxSize = Math.max(maxSize, in.get(i).length);
+            inbound[i] = in.get(i).data;
+            inboundTimestamps[i] = in.get(i).timestampNanos;
+            inboundGates[i] = gates.get(i);
+        }
+        this.maxChunkSize = maxSize;
+        this.outbound = out.toByteArray();
+        this.outboundEnds = new long[ends.size()];
+        this.outboundTimestamps = new long[ends.size()];
+        for (int i = 0; i < outboundEnds.length; i++)
+        {
+            outboundEnds[i] = ends.get(i);
+            outboundTimestamps[i] = outTimestamps.get(i);
+        }
+        this.anchorTimestamp = records.isEmpty() ? 0 : records.get(0).timestampNanos;
+        this.speed = speed;
+        this.waitForWrites = waitForWrites;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the replay clock.
+     */
+    @Override
+    public boolean open()
+    {
+        lock.lock();
+        try
+        {
+            anchorNanos = System.nanoTime();
+            startNanos = anchorNanos;
+            return !closed;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer)
+    {
+        if (finished && !finishReported)
+        {
+            // only the read thread gets here
+            finishReported = true;
+            if (listener != null)
+            {
+                listener.onFinished(bytesRead, inbound.length, finishedNanos - startNanos, mismatches);
+            }
+        }
+        return readChunk(buffer);
+    }
+
+    private int readChunk(byte[] buffer)
+    {
+        lock.lock();
+        try
+        {
+            while (true)
+            {
+                if (closed)
+                {
+                    return -1;
+                }
+                if (nextInbound == inbound.length)
+                {
+                    // an idle device after the recording ends
+                    changed.await();
+                    continue;
+                }
+                if (waitForWrites && written < inboundGates[nextInbound])
+                {
+                    changed.await();
+                    continue;
+                }
+                long now = System.nanoTime();
+                long due = speed == 0 ? now
+                        : anchorNanos + (long) ((inboundTimestamps[nextInbound] - anchorTimestamp) / speed);
+                if (inboundOffset == 0 && due > now)
+                {
+                    changed.awaitNanos(due - now);
+                    continue;
+                }
+                return take(buffer, now);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held; a chunk larger than the buffer is read in pieces
+    private int take(byte[] buffer, long now)
+    {
+        byte[] chunk = inbound[nextInbound];
+        int size = Math.min(buffer.length, chunk.length - inboundOffset);
+        System.arraycopy(chunk, inboundOffset, buffer, 0, size);
+        inboundOffset += size;
+        bytesRead += size;
+        if (inboundOffset == chunk.length)
+        {
+            nextInbound++;
+            inboundOffset = 0;
+        }
+        if (nextInbound == inbound.length && !finished)
+        {
+            finished = true;
+            finishedNanos = now;
+        }
+        return size;
+    }
+
+    @Override
+    public int write(byte[] data, int length, int timeoutMillis)
+    {
+        byte[] expected = null;
+        long offset;
+        lock.lock();
+        try
+        {
+            if (closed)
+            {
+                return -1;
+            }
+            offset = written;
+            int available = (int) Math.max(0, Math.min(length, outbound.length - written));
+            boolean matches = available == length;
+            for (int i = 0; i < available && matches; i++)
+            {
+                matches = outbound[(int) written + i] == data[i];
+            }
+            if (!matches)
+            {
+                mismatches++;
+                expected = Arrays.copyOfRange(outbound, (int) written, (int) written + available);
+            }
+            written += length;
+
+            long now = System.nanoTime();
+            while (nextOutbound < outboundEnds.length && written >= outboundEnds[nextOutbound])
+            {
+                if (waitForWrites)
+                {
+                    // what the device sent after this write is timed from now
+                    anchorNanos = now;
+                    anchorTimestamp = outboundTimestamps[nextOutbound];
+                }
+                nextOutbound++;
+            }
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if (expected != null && listener != null)
+        {
+            listener.onMismatch(offset, expected, Arrays.copyOf(data, length));
+        }
+        return length;
+    }
+
+    @Override
+    public void configure(SerialPortSettings settings)
+    {
+    }
+
+    @Override
+    public void setBaudRate(int baudRate)
+    {
+    }
+
+    /**
+     * Large enough for the biggest recorded chunk, so chunks are read as they were recorded.
+     */
+    @Override
+    public int getReadPacketSize()
+    {
+        return maxChunkSize;
+    }
+
+    @Override
+    public int getWritePacketSize()
+    {
+        return LoopbackTransport.PACKET_SIZE;
+    }
+
+    @Override
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            closed = true;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
@@ -1,60 +1,203 @@
 package com.melihyarikkaya.rnserialport;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer/single-consumer ring buffer.
+ * Only ReadThread may call add(), only the consumer may call drain() and clean().
+ *
+ * Every add() stamps its first position with its receive time, so drainChunk() can tell when
+ * the bytes it returns arrived. Adds with the time of the previous stamp share it; when the stamp
+ * ring is full the bytes are counted as received with the previous stamp.
+ */
 public class SerialBuffer
 {
-    private static final int DEFAULT_CAPACITY = 4;
-    private byte[] bufferArray;
-    private int size;
-    private int capacity;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int STAMP_CAPACITY = 1 << 10;
+    private final byte[] bufferArray;
+    private final int capacity;
+    private final int mask;
+
+    // next position to write, advanced only by the producer
+    private final AtomicLong head = new AtomicLong(0);
+    // next position to read, advanced only by the consumer
+    private final AtomicLong tail = new AtomicLong(0);
+
+    private final long[] stampPositions = new long[STAMP_CAPACITY];
+    private final long[] stampTimes = new long[STAMP_CAPACITY];
+    // next stamp to write, advanced only by the producer
+    private final AtomicLong stampHead = new AtomicLong(0);
+    // stamp covering the read position, advanced only by the consumer
+    private final AtomicLong stampTail = new AtomicLong(0);
+    // producer only
+    private long lastStampNanos;
+    // consumer only
+    private long drainedTimestamp;
 
     public SerialBuffer()
     {
-        clean();
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SerialBuffer(int requestedCapacity)
+    {
+        capacity = roundUpToPowerOfTwo(requestedCapacity);
+        mask = capacity - 1;
+        bufferArray = new byte[capacity];
     }
 
-    public void add(byte element)
+    public boolean add(byte element)
     {
-        if (!canAddElement())
+        long currentHead = head.get();
+        if (currentHead - tail.get() >= capacity)
         {
-            extendBuffer();
+            return false;
         }
-        bufferArray[size++] = element;
+        stamp(currentHead, System.nanoTime());
+        bufferArray[(int) currentHead & mask] = element;
+        head.lazySet(currentHead + 1);
+        return true;
     }
 
-    public void clean()
+    public int add(byte[] elements, int offset, int length)
     {
-        size = 0;
-        capacity = DEFAULT_CAPACITY;
-        bufferArray = new byte[capacity];
+        return add(elements, offset, length, System.nanoTime());
+    }
+
+    /**
+     * @param timestampNanos System.nanoTime() at which the bytes were received
+     * @return number of bytes accepted, less than length when the buffer is full
+     */
+    public int add(byte[] elements, int offset, int length, long timestampNanos)
+    {
+        long currentHead = head.get();
+        int free = capacity - (int) (currentHead - tail.get());
+        int count = Math.min(length, free);
+        if (count <= 0)
+        {
+            return 0;
+        }
+        stamp(currentHead, timestampNanos);
+        int start = (int) currentHead & mask;
+        int firstPart = Math.min(count, capacity - start);
+        System.arraycopy(elements, offset, bufferArray, start, firstPart);
+        System.arraycopy(elements, offset + firstPart, bufferArray, 0, count - firstPart);
+        head.lazySet(currentHead + count);
+        return count;
+    }
+
+    /**
+     * Moves up to length buffered bytes into the caller's array.
+     *
+     * @return number of bytes copied
+     */
+    public int drain(byte[] destination, int offset, int length)
+    {
+        long currentTail = tail.get();
+        int count = Math.min(length, (int) (head.get() - currentTail));
+        if (count <= 0)
+        {
+            return 0;
+        }
+        int start = (int) currentTail & mask;
+        int firstPart = Math.min(count, capacity - start);
+        System.arraycopy(bufferArray, start, destination, offset, firstPart);
+        System.arraycopy(bufferArray, 0, destination, offset + firstPart, count - firstPart);
+        tail.lazySet(currentTail + count);
+        return count;
     }
 
-    public byte[] getBufferArray()
+    /**
+     * Like drain(), but stops where bytes of a later read begin, so all returned bytes
+     * were received at getDrainedTimestamp().
+     */
+    public int drainChunk(byte[] destination, int offset, int length)
     {
-        byte[] resultBuffer = new byte[size];
-        System.arraycopy(bufferArray, 0, resultBuffer, 0, size);
+        long currentTail = tail.get();
+        long available = head.get() - currentTail;
+        if (available <= 0)
+        {
+            return 0;
+        }
+        // read after head, so the stamps of all available bytes are visible
+        long currentStampHead = stampHead.get();
+        long currentStamp = stampTail.get();
+        while (currentStamp + 1 < currentStampHead
+                && stampPositions[(int) (currentStamp + 1) & (STAMP_CAPACITY - 1)] <= currentTail)
+        {
+            currentStamp++;
+        }
+        stampTail.lazySet(currentStamp);
+
+        long count = Math.min(length, available);
+        if (currentStamp + 1 < currentStampHead)
+        {
+            count = Math.min(count, stampPositions[(int) (currentStamp + 1) & (STAMP_CAPACITY - 1)] - currentTail);
+        }
+        drainedTimestamp = stampTimes[(int) currentStamp & (STAMP_CAPACITY - 1)];
+        return drain(destination, offset, (int) count);
+    }
+
+    /**
+     * @return receive time of the bytes returned by the last drainChunk()
+     */
+    public long getDrainedTimestamp()
+    {
+        return drainedTimestamp;
+    }
+
+    // producer only, before the bytes are published
+    private void stamp(long position, long timestampNanos)
+    {
+        long currentStampHead = stampHead.get();
+        if (currentStampHead > 0 && timestampNanos == lastStampNanos)
+        {
+            return;
+        }
+        if (currentStampHead - stampTail.get() >= STAMP_CAPACITY)
+        {
+            return;
+        }
+        int index = (int) currentStampHead & (STAMP_CAPACITY - 1);
+        stampPositions[index] = position;
+        stampTimes[index] = timestampNanos;
+        lastStampNanos = timestampNanos;
+        stampHead.lazySet(currentStampHead + 1);
+    }
+
+    public byte[] drain()
+    {
+        byte[] resultBuffer = new byte[getSize()];
+        drain(resultBuffer, 0, resultBuffer.length);
         return resultBuffer;
     }
 
+    public void clean()
+    {
+        tail.lazySet(head.get());
+    }
+
     public int getSize()
     {
-        return size;
+        return (int) (head.get() - tail.get());
     }
 
-    public boolean isEmpty()
+    public int getCapacity()
     {
-        return size == 0;
+        return capacity;
     }
 
-    private boolean canAddElement()
+    public boolean isEmpty()
     {
-        return size < capacity;
+        return getSize() == 0;
     }
 
-    private void extendBuffer()
+    private static int roundUpToPowerOfTwo(int value)
     {
-        capacity = size * 2;
-        byte[] newBuffer = new byte[capacity];
-        System.arraycopy(bufferArray, 0, newBuffer, 0, size);
-        bufferArray = newBuffer;
+        if (value <= 1)
+        {
+            return 1;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
     }
 }
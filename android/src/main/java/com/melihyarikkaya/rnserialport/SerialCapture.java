@@ -0,0 +1,411 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the raw traffic of one connection to append-only binary files.
+ *
+ * record() only copies into an in-memory buffer and never waits for the disk: a writer thread
+ * swaps the buffer for a spare one and appends it through a FileChannel. The writer sleeps
+ * until data arrives, then gives the buffer up to 100 ms or half its size to fill. When both buffers are
+ * in use the record is dropped and a DROPPED record with the lost byte count is written in its place.
+ * Chunks larger than the buffer are always dropped. A file is closed and a new one started before
+ * it would exceed maxFileSize; only the newest maxFiles files are kept.
+ *
+ * File layout, big-endian: magic "RNSC", version (u16), wall clock millis (i64) and nanoTime (i64)
+ * at file start, device name length (u16) and UTF-8 name, then records of
+ * type (u8), nanoTime (i64), length (i32) and, except for DROPPED, length bytes of data.
+ */
+public class SerialCapture
+{
+    public static final byte RECORD_IN = 0;
+    public static final byte RECORD_OUT = 1;
+    public static final byte RECORD_DROPPED = 2;
+
+    private static final int MAGIC = 0x524E5343;
+    private static final short VERSION = 1;
+    private static final int RECORD_HEADER_SIZE = 13;
+    private static final long FLUSH_INTERVAL_MILLIS = 100;
+    private static final String FILE_EXTENSION = ".rnsc";
+
+    /**
+     * One record read back from a capture file.
+     */
+    public static class Record
+    {
+        public final byte type;
+        public final long timestampNanos;
+        // null for DROPPED records
+        public final byte[] data;
+        public final int length;
+
+        Record(byte type, long timestampNanos, byte[] data, int length)
+        {
+            this.type = type;
+            this.timestampNanos = timestampNanos;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private final File directory;
+    private final String deviceName;
+    private final String filePrefix;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final Thread writerThread;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private ByteBuffer active;
+    private long pendingDroppedBytes = 0;
+    private long droppedBytes = 0;
+    private long capturedBytes = 0;
+    private boolean closed = false;
+
+    // owned by the writer thread until it ends
+    private ByteBuffer spare;
+    private FileChannel channel;
+    private long fileSize;
+    private int fileIndex = 0;
+    private final ArrayDeque<File> files = new ArrayDeque<>();
+    private volatile IOException failure;
+
+    public SerialCapture(File directory, String deviceName, long maxFileSize, int maxFiles, int bufferSize)
+            throws IOException
+    {
+        if (bufferSize < RECORD_HEADER_SIZE || maxFileSize < 2L * bufferSize || maxFiles <= 0)
+        {
+            throw new IllegalArgumentException("Max file size must be at least twice the buffer size"
+                    + " and at least one file must be kept");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.deviceName = deviceName;
+        this.filePrefix = deviceName.replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_", "")
+                + "-" + System.currentTimeMillis();
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        this.active = ByteBuffer.allocateDirect(bufferSize);
+        this.spare = ByteBuffer.allocateDirect(bufferSize);
+
+        openNextFile();
+        writerThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeLoop();
+            }
+        }, "SerialCapture-" + deviceName);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public File getCurrentFile()
+    {
+        synchronized (files)
+        {
+            return files.peekLast();
+        }
+    }
+
+    /**
+     * Copies one chunk into the capture buffer. Safe to call from any thread.
+     */
+    public void record(byte type, byte[] data, int offset, int length)
+    {
+        long now = System.nanoTime();
+        synchronized (lock)
+        {
+            if (closed)
+            {
+                return;
+            }
+            if (pendingDroppedBytes > 0)
+            {
+                if (active.remaining() < RECORD_HEADER_SIZE)
+                {
+                    pendingDroppedBytes += length;
+                    droppedBytes += length;
+                    return;
+                }
+                putRecordHeader(RECORD_DROPPED, now, pendingDroppedBytes > Integer.MAX_VALUE
+                        ? Integer.MAX_VALUE : (int) pendingDroppedBytes);
+                pendingDroppedBytes = 0;
+            }
+            if (active.remaining() < RECORD_HEADER_SIZE + length)
+            {
+                pendingDroppedBytes += length;
+                droppedBytes += length;
+                lock.notify();
+                return;
+            }
+            int half = active.capacity() / 2;
+            boolean wasEmpty = active.position() == 0;
+            boolean belowHalf = active.position() < half;
+            putRecordHeader(type, now, length);
+            active.put(data, offset, length);
+            capturedBytes += length;
+            if (wasEmpty || (belowHalf && active.position() >= half))
+            {
+                lock.notify();
+            }
+        }
+    }
+
+    // called with the lock held
+    private void putRecordHeader(byte type, long timestampNanos, int length)
+    {
+        active.put(type);
+        active.putLong(timestampNanos);
+        active.putInt(length);
+    }
+
+    /**
+     * Writes out what is buffered, closes the file and waits for the writer thread.
+     */
+    public void stop()
+    {
+        synchronized (lock)
+        {
+            if (!closed && pendingDroppedBytes > 0 && active.remaining() >= RECORD_HEADER_SIZE)
+            {
+                putRecordHeader(RECORD_DROPPED, System.nanoTime(), pendingDroppedBytes > Integer.MAX_VALUE
+                        ? Integer.MAX_VALUE : (int) pendingDroppedBytes);
+                pendingDroppedBytes = 0;
+            }
+            closed = true;
+            lock.notify();
+        }
+        try
+        {
+            writerThread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the files still on disk, oldest first
+     */
+    public List<File> getFiles()
+    {
+        synchronized (files)
+        {
+            return new ArrayList<>(files);
+        }
+    }
+
+    public long getCapturedBytes()
+    {
+        synchronized (lock)
+        {
+            return capturedBytes;
+        }
+    }
+
+    public long getDroppedBytes()
+    {
+        synchronized (lock)
+        {
+            return droppedBytes;
+        }
+    }
+
+    /**
+     * @return the error that ended the capture early, or null
+     */
+    public IOException getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Reads the records of capture files in order. A truncated last record, left by a crash, is ignored.
+     */
+    public static List<Record> readRecords(List<File> captureFiles) throws IOException
+    {
+        List<Record> records = new ArrayList<>();
+        for (File file : captureFiles)
+        {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                if (input.readInt() != MAGIC || input.readShort() != VERSION)
+                {
+                    throw new IOException(file + " is not a capture file");
+                }
+                // wall clock, nanoTime and device name
+                input.readLong();
+                input.readLong();
+                input.skipBytes(input.readUnsignedShort());
+                readRecords(input, records);
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        return records;
+    }
+
+    private static void readRecords(DataInputStream input, List<Record> records) throws IOException
+    {
+        try
+        {
+            int type;
+            while ((type = input.read()) >= 0)
+            {
+                long timestampNanos = input.readLong();
+                int length = input.readInt();
+                byte[] data = null;
+                if (type != RECORD_DROPPED)
+                {
+                    data = new byte[length];
+                    input.readFully(data);
+                }
+                records.add(new Record((byte) type, timestampNanos, data, length));
+            }
+        }
+        catch (EOFException e)
+        {
+            // truncated last record
+        }
+    }
+
+    private void writeLoop()
+    {
+        try
+        {
+            while (true)
+            {
+                ByteBuffer batch;
+                boolean last;
+                synchronized (lock)
+                {
+                    // an idle capture costs nothing until record() or stop() notifies
+                    while (!closed && active.position() == 0)
+                    {
+                        lock.wait();
+                    }
+                    if (!closed && active.position() < active.capacity() / 2)
+                    {
+                        lock.wait(FLUSH_INTERVAL_MILLIS);
+                    }
+                    last = closed;
+                    batch = active;
+                    active = spare;
+                }
+                batch.flip();
+                if (batch.hasRemaining())
+                {
+                    append(batch);
+                }
+                batch.clear();
+                spare = batch;
+                if (last)
+                {
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            failure = e;
+            SerialLog.e("SerialCapture: " + deviceName + " stopped", e);
+            synchronized (lock)
+            {
+                closed = true;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            closeChannel();
+        }
+    }
+
+    private void append(ByteBuffer batch) throws IOException
+    {
+        if (fileSize + batch.remaining() > maxFileSize)
+        {
+            closeChannel();
+            openNextFile();
+        }
+        while (batch.hasRemaining())
+        {
+            fileSize += channel.write(batch);
+        }
+    }
+
+    private void openNextFile() throws IOException
+    {
+        File file = new File(directory, filePrefix + "-" + (fileIndex++) + FILE_EXTENSION);
+        channel = new FileOutputStream(file).getChannel();
+        synchronized (files)
+        {
+            files.addLast(file);
+            while (files.size() > maxFiles)
+            {
+                File oldest = files.pollFirst();
+                if (!oldest.delete())
+                {
+                    SerialLog.w("SerialCapture: cannot delete " + oldest, null);
+                }
+            }
+        }
+
+        byte[] name = deviceName.getBytes(Charset.forName("UTF-8"));
+        ByteBuffer header = ByteBuffer.allocate(24 + name.length);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putLong(System.currentTimeMillis());
+        header.putLong(System.nanoTime());
+        header.putShort((short) name.length);
+        header.put(name);
+        header.flip();
+        fileSize = 0;
+        while (header.hasRemaining())
+        {
+            fileSize += channel.write(header);
+        }
+    }
+
+    private void closeChannel()
+    {
+        if (channel == null)
+        {
+            return;
+        }
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            SerialLog.w("SerialCapture: closing " + deviceName + " capture failed", e);
+        }
+        channel = null;
+    }
+}
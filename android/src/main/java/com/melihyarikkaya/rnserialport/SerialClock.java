@@ -0,0 +1,32 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Monotonic receive clock shared by all connections. System.nanoTime() values are reported
+ * relative to one anchor taken when the class is loaded, together with the wall clock at that
+ * moment, so frames of different devices can be compared and still be placed in wall time.
+ */
+public final class SerialClock
+{
+    public static final long ANCHOR_NANOS = System.nanoTime();
+    public static final long ANCHOR_EPOCH_MILLIS = System.currentTimeMillis();
+
+    private SerialClock()
+    {
+    }
+
+    /**
+     * System.nanoTime(), read through this class so the anchor is taken before the first receive time.
+     */
+    public static long now()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Exact as a JS number for the first 104 days after the anchor.
+     */
+    public static double sinceAnchor(long nanoTime)
+    {
+        return nanoTime - ANCHOR_NANOS;
+    }
+}
@@ -0,0 +1,224 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.util.Arrays;
+
+/**
+ * Table-driven hex and base64 codec working on caller-supplied buffers.
+ * Decoders throw IllegalArgumentException naming the offending position.
+ */
+public final class SerialCodec
+{
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char[] BASE64_DIGITS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final char BASE64_PAD = '=';
+
+    private static final byte[] HEX_VALUES = new byte[128];
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static
+    {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < HEX_DIGITS.length; i++)
+        {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toLowerCase(HEX_DIGITS[i])] = (byte) i;
+        }
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        for (int i = 0; i < BASE64_DIGITS.length; i++)
+        {
+            BASE64_VALUES[BASE64_DIGITS[i]] = (byte) i;
+        }
+    }
+
+    private SerialCodec()
+    {
+    }
+
+    ////////////////////////// Hex //////////////////////////
+
+    public static int hexEncodedLength(int length)
+    {
+        return length * 2;
+    }
+
+    /**
+     * @return number of chars written to destination
+     */
+    public static int hexEncode(byte[] source, int offset, int length, char[] destination, int destinationOffset)
+    {
+        int index = destinationOffset;
+        for (int i = offset; i < offset + length; i++)
+        {
+            int v = source[i] & 0xFF;
+            destination[index++] = HEX_DIGITS[v >>> 4];
+            destination[index++] = HEX_DIGITS[v & 0x0F];
+        }
+        return index - destinationOffset;
+    }
+
+    public static String hexEncode(byte[] source, int offset, int length)
+    {
+        char[] chars = new char[hexEncodedLength(length)];
+        hexEncode(source, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    public static int hexDecodedLength(CharSequence hex)
+    {
+        if (hex.length() % 2 != 0)
+        {
+            throw new IllegalArgumentException("Hex string must have an even length, got " + hex.length());
+        }
+        return hex.length() / 2;
+    }
+
+    /**
+     * Accepts upper and lower case digits.
+     *
+     * @return number of bytes written to destination
+     */
+    public static int hexDecode(CharSequence hex, byte[] destination, int destinationOffset)
+    {
+        int length = hexDecodedLength(hex);
+        for (int i = 0; i < length; i++)
+        {
+            int high = hexValue(hex, i * 2);
+            int low = hexValue(hex, i * 2 + 1);
+            destination[destinationOffset + i] = (byte) ((high << 4) | low);
+        }
+        return length;
+    }
+
+    public static byte[] hexDecode(CharSequence hex)
+    {
+        byte[] bytes = new byte[hexDecodedLength(hex)];
+        hexDecode(hex, bytes, 0);
+        return bytes;
+    }
+
+    private static int hexValue(CharSequence hex, int index)
+    {
+        char c = hex.charAt(index);
+        int value = c < 128 ? HEX_VALUES[c] : -1;
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("Invalid hex character '" + c + "' at position " + index);
+        }
+        return value;
+    }
+
+    ////////////////////////// Base64 //////////////////////////
+
+    public static int base64EncodedLength(int length)
+    {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Standard alphabet with padding, no line breaks.
+     *
+     * @return number of chars written to destination
+     */
+    public static int base64Encode(byte[] source, int offset, int length, char[] destination, int destinationOffset)
+    {
+        int index = destinationOffset;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 2 < end; i += 3)
+        {
+            int n = ((source[i] & 0xFF) << 16) | ((source[i + 1] & 0xFF) << 8) | (source[i + 2] & 0xFF);
+            destination[index++] = BASE64_DIGITS[(n >>> 18) & 0x3F];
+            destination[index++] = BASE64_DIGITS[(n >>> 12) & 0x3F];
+            destination[index++] = BASE64_DIGITS[(n >>> 6) & 0x3F];
+            destination[index++] = BASE64_DIGITS[n & 0x3F];
+        }
+        int remaining = end - i;
+        if (remaining > 0)
+        {
+            int n = (source[i] & 0xFF) << 16;
+            if (remaining == 2)
+            {
+                n |= (source[i + 1] & 0xFF) << 8;
+            }
+            destination[index++] = BASE64_DIGITS[(n >>> 18) & 0x3F];
+            destination[index++] = BASE64_DIGITS[(n >>> 12) & 0x3F];
+            destination[index++] = remaining == 2 ? BASE64_DIGITS[(n >>> 6) & 0x3F] : BASE64_PAD;
+            destination[index++] = BASE64_PAD;
+        }
+        return index - destinationOffset;
+    }
+
+    public static String base64Encode(byte[] source, int offset, int length)
+    {
+        char[] chars = new char[base64EncodedLength(length)];
+        base64Encode(source, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    public static int base64DecodedLength(CharSequence base64)
+    {
+        int length = base64.length();
+        if (length % 4 != 0)
+        {
+            throw new IllegalArgumentException("Base64 string length must be a multiple of 4, got " + length);
+        }
+        int padding = 0;
+        if (length > 0 && base64.charAt(length - 1) == BASE64_PAD)
+        {
+            padding++;
+            if (base64.charAt(length - 2) == BASE64_PAD)
+            {
+                padding++;
+            }
+        }
+        return length / 4 * 3 - padding;
+    }
+
+    /**
+     * @return number of bytes written to destination
+     */
+    public static int base64Decode(CharSequence base64, byte[] destination, int destinationOffset)
+    {
+        int decodedLength = base64DecodedLength(base64);
+        int firstPad = base64.length() - (base64.length() / 4 * 3 - decodedLength);
+        int index = destinationOffset;
+        int end = destinationOffset + decodedLength;
+        for (int i = 0; i < base64.length(); i += 4)
+        {
+            int n = (base64Value(base64, i) << 18) | (base64Value(base64, i + 1) << 12);
+            int third = i + 2 >= firstPad ? 0 : base64Value(base64, i + 2);
+            int fourth = i + 3 >= firstPad ? 0 : base64Value(base64, i + 3);
+            n |= (third << 6) | fourth;
+
+            destination[index++] = (byte) (n >>> 16);
+            if (index < end)
+            {
+                destination[index++] = (byte) (n >>> 8);
+            }
+            if (index < end)
+            {
+                destination[index++] = (byte) n;
+            }
+        }
+        return decodedLength;
+    }
+
+    public static byte[] base64Decode(CharSequence base64)
+    {
+        byte[] bytes = new byte[base64DecodedLength(base64)];
+        base64Decode(base64, bytes, 0);
+        return bytes;
+    }
+
+    private static int base64Value(CharSequence base64, int index)
+    {
+        char c = base64.charAt(index);
+        int value = c < 128 ? BASE64_VALUES[c] : -1;
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("Invalid base64 character '" + c + "' at position " + index);
+        }
+        return value;
+    }
+}
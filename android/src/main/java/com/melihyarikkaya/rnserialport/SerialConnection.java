@@ -2,29 +2,35 @@ package com.melihyarikkaya.rnserialport;
 
 import android.content.Intent;
 import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbDeviceConnection;
-import android.util.Log;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
-import com.felhr.usbserial.SerialInputStream;
-import com.felhr.usbserial.SerialOutputStream;
-import com.felhr.usbserial.UsbSerialDevice;
-import com.felhr.usbserial.UsbSerialInterface;
 
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
-import static com.melihyarikkaya.rnserialport.Definitions.bytesToHex;
+import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onBufferOverflow;
 import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onErrorEvent;
+import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onFrameAggregate;
 import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onReadDataFromPort;
-import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.BAUD_RATE;
-import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.DATA_BIT;
-import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.FLOW_CONTROL;
-import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.PARITY;
-import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.STOP_BIT;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.BUFFER_LIMIT;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.BUFFER_OVERFLOW_POLICY;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.FRAME_TIMEOUT;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.READ_CHUNK_SIZE;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.READ_MODE;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.RETURNED_DATA_TYPE;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.TEXT_CHARSET;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.WRITE_QUEUE_SIZE;
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.WRITE_TIMEOUT;
 import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_USB_CONNECT;
 import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_USB_NOT_OPENED;
 import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_USB_READY;
@@ -32,83 +38,325 @@ import static com.melihyarikkaya.rnserialport.SerialPortEvents.ACTION_USB_READY;
 
 public class SerialConnection {
 
-    private boolean isConnectionOpened = false;
+    public interface Listener
+    {
+        /**
+         * Called on the read thread once the connection has closed itself after losing its transport.
+         */
+        void onTransportLost(SerialConnection connection);
+    }
+
+    private static final AtomicInteger nextHandle = new AtomicInteger(0);
+
+    private volatile boolean isConnectionOpened = false;
+
+    // never reused, so a stale handle cannot reach a newer connection
+    private final int handle = nextHandle.incrementAndGet();
 
     private final ReactContext reactContext;
     private final String deviceName;
     private final UsbDevice device;
-    private final UsbDeviceConnection connection;
-    private final UsbSerialDevice serialPort;
+    private final SerialTransport transport;
+    private final EventBatcher eventBatcher;
+    private final Listener listener;
+    private final SerialConnectionStats stats = new SerialConnectionStats();
+
+    private volatile SerialPortSettings settings;
 
     private ReadThread readThread;
-    private BufferThread bufferThread;
+    private FrameTask frameTask;
+    // writes run on the separate write reactor, so a slow write never delays read events
+    private final SerialReactor.Strand frameStrand;
+    private final SerialReactor.Strand writeStrand;
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private final ModbusMaster modbusMaster;
+    private final SerialPoller poller;
+    private volatile SerialCapture capture;
+
+    private volatile int readMode = READ_MODE;
+    private volatile int returnedDataType = RETURNED_DATA_TYPE;
+    private int readChunkSize = READ_CHUNK_SIZE;
 
     public String getDeviceName() {
         return deviceName;
     }
 
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * @return null for connections that are not backed by a USB device
+     */
     public UsbDevice getDevice() {
         return device;
     }
 
-    public UsbDeviceConnection getConnection() {
-        return connection;
+    public SerialTransport getTransport() {
+        return transport;
     }
 
-    public UsbSerialDevice getSerialPort() {
-        return serialPort;
+    public void closeConnection()
+    {
+        isConnectionOpened = false;
+        poller.stopAll();
+        // a port that failed to open never got its reader, framer and writer
+        if (readThread != null)
+        {
+            readThread.setKeep(Boolean.FALSE);
+        }
+        if (frameTask != null)
+        {
+            frameStrand.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    frameTask.cancelIdleTimer();
+                    frameTask.replaceFrameProcessor(null);
+                    frameTask.failTransactions();
+                }
+            });
+        }
+        if (serialWriter != null)
+        {
+            serialWriter.close();
+        }
+        transport.close();
+        stopCapture();
     }
 
-    public void closeConnection()
+    public boolean isOpened()
     {
-        readThread.setKeep(Boolean.FALSE);
-        bufferThread.setKeep(Boolean.FALSE);
-        serialBuffer.clean();
+        return isConnectionOpened;
+    }
 
-        try
+    public SerialConnectionStats getStats()
+    {
+        return stats;
+    }
+
+    public ModbusMaster getModbusMaster()
+    {
+        return modbusMaster;
+    }
+
+    /**
+     * Starts recording inbound and outbound bytes, replacing a running capture.
+     */
+    public void startCapture(SerialCapture newCapture)
+    {
+        SerialCapture oldCapture;
+        synchronized (this)
         {
-            serialPort.close();
+            oldCapture = capture;
+            capture = newCapture;
+            if (serialWriter != null)
+            {
+                serialWriter.setCapture(newCapture);
+            }
         }
-        catch (Exception e)
+        if (oldCapture != null)
         {
-            e.printStackTrace();
+            oldCapture.stop();
         }
-        try
+    }
+
+    /**
+     * @return the stopped capture, or null when none was running
+     */
+    public SerialCapture stopCapture()
+    {
+        SerialCapture oldCapture;
+        synchronized (this)
         {
-            connection.close();
+            oldCapture = capture;
+            capture = null;
+            if (serialWriter != null)
+            {
+                serialWriter.setCapture(null);
+            }
         }
-        catch (Exception e)
+        if (oldCapture != null)
         {
-            e.printStackTrace();
+            oldCapture.stop();
         }
-        isConnectionOpened = false;
+        return oldCapture;
     }
 
-    public boolean isOpened()
+    public SerialPoller getPoller()
     {
-        return isConnectionOpened;
+        return poller;
+    }
+
+    /**
+     * @return 0 when the port never opened, it has no writer then
+     */
+    public int getWriteQueueDepth()
+    {
+        return serialWriter == null ? 0 : serialWriter.getQueueDepth();
+    }
+
+    public SerialPortSettings getSettings()
+    {
+        return settings;
+    }
+
+    public void setBaudRate(int baudRate)
+    {
+        SerialPortSettings newSettings = settings.withBaudRate(baudRate);
+        transport.setBaudRate(baudRate);
+        settings = newSettings;
+    }
+
+    public int getReadMode()
+    {
+        return readMode;
+    }
+
+    public void setReadMode(int readMode)
+    {
+        this.readMode = readMode;
+    }
+
+    public int getReturnedDataType()
+    {
+        return returnedDataType;
+    }
+
+    public void setReturnedDataType(int returnedDataType)
+    {
+        this.returnedDataType = returnedDataType;
+    }
+
+    /**
+     * Configures how frames become text in RETURNED_DATA_TYPE_TEXT. Lines are capped at the buffer limit.
+     * The decoder is swapped on the framing strand, which passes on the old one's partial line first.
+     *
+     * @param lineTerminator null or empty to emit text as it arrives instead of line by line
+     */
+    public void setTextOptions(Charset charset, String lineTerminator)
+    {
+        final SerialTextDecoder newTextDecoder = new SerialTextDecoder(charset, lineTerminator,
+                Math.max(bufferLimit, SerialTextDecoder.MIN_LINE_LENGTH));
+        frameStrand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (returnedDataType == Definitions.RETURNED_DATA_TYPE_TEXT)
+                {
+                    textDecoder.flush(textOutput);
+                }
+                textDecoder = newTextDecoder;
+            }
+        });
+    }
+
+    /**
+     * The decoder is swapped on the framing strand, which flushes the old one first.
+     */
+    public void setFrameDecoder(final FrameDecoder frameDecoder)
+    {
+        frameStrand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                frameTask.replaceFrameDecoder(frameDecoder);
+            }
+        });
+    }
+
+    /**
+     * Installs the processing stage between framing and emission, null to emit every frame.
+     * The old processor's pending interval output is emitted first.
+     */
+    public void setFrameProcessor(final FrameProcessor frameProcessor)
+    {
+        frameStrand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                frameTask.replaceFrameProcessor(frameProcessor);
+            }
+        });
+    }
+
+    public long getFrameTimeoutNanos()
+    {
+        return frameTimeoutNanos;
+    }
+
+    /**
+     * Inter-byte timeout after which a partial frame is passed to the decoder's onIdle.
+     */
+    public void setFrameTimeoutNanos(long frameTimeoutNanos)
+    {
+        this.frameTimeoutNanos = frameTimeoutNanos;
+        frameStrand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                frameTask.cancelIdleTimer();
+                frameTask.checkIdle();
+            }
+        });
+    }
+
+    /**
+     * Most bytes held while waiting for the end of a frame, and what happens when more arrive.
+     */
+    public void setBufferLimit(int limit, String overflowPolicy)
+    {
+        if (limit <= 0)
+        {
+            throw new IllegalArgumentException("Buffer limit must be positive");
+        }
+        if (!Definitions.BUFFER_OVERFLOW_FLUSH_EARLY.equals(overflowPolicy)
+                && !Definitions.BUFFER_OVERFLOW_DROP_OLDEST.equals(overflowPolicy)
+                && !Definitions.BUFFER_OVERFLOW_DROP_NEWEST.equals(overflowPolicy)
+                && !Definitions.BUFFER_OVERFLOW_PAUSE_READING.equals(overflowPolicy))
+        {
+            throw new IllegalArgumentException("Unknown overflow policy: " + overflowPolicy);
+        }
+        this.bufferLimit = limit;
+        this.bufferOverflowPolicy = overflowPolicy;
     }
 
     private SerialBuffer serialBuffer;
-    private SerialInputStream inputStream;
-    private SerialOutputStream outputStream;
+    private SerialWriter serialWriter;
 
-    private AtomicLong currentTime = new AtomicLong(System.currentTimeMillis());
     private AtomicLong lastDataReceivedTime = new AtomicLong(0);
+    private volatile long frameTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(FRAME_TIMEOUT);
+    private volatile int bufferLimit = BUFFER_LIMIT;
+    private volatile String bufferOverflowPolicy = BUFFER_OVERFLOW_POLICY;
 
     public SerialConnection(final ReactContext reactContext,
                             final String deviceName,
                             final UsbDevice device,
-                            final UsbDeviceConnection connection,
-                            final UsbSerialDevice serialPort) {
+                            final SerialTransport transport,
+                            final SerialPortSettings settings,
+                            final EventBatcher eventBatcher,
+                            final SerialReactor reactor,
+                            final SerialReactor writeReactor,
+                            final Listener listener) {
 
         this.reactContext = reactContext;
+        this.settings = settings;
+        this.eventBatcher = eventBatcher;
+        this.listener = listener;
         this.deviceName = deviceName;
         this.device = device;
-        this.connection = connection;
-        this.serialPort = serialPort;
+        this.transport = transport;
+        this.frameStrand = reactor.newStrand();
+        this.writeStrand = writeReactor.newStrand();
+        this.modbusMaster = new ModbusMaster(this, reactor.newStrand());
+        this.poller = new SerialPoller(reactContext, this, reactor.newStrand());
 
-        if (!serialPort.syncOpen())
+        if (!transport.open())
         {
             Intent intent2 = new Intent(ACTION_USB_NOT_OPENED);
             reactContext.sendBroadcast(intent2);
@@ -116,15 +364,13 @@ public class SerialConnection {
         }
 
         isConnectionOpened = true;
-        serialPort.setBaudRate(BAUD_RATE);
-        serialPort.setDataBits(DATA_BIT);
-        serialPort.setStopBits(STOP_BIT);
-        serialPort.setParity(PARITY);
-        serialPort.setFlowControl(FLOW_CONTROL);
-
-        inputStream = serialPort.getInputStream();
-        outputStream = serialPort.getOutputStream();
+        transport.configure(settings);
+
         this.serialBuffer = new SerialBuffer();
+        this.readChunkSize = settings.getReadChunkSize() > 0
+                ? settings.getReadChunkSize() : transport.getReadPacketSize();
+        this.serialWriter = new SerialWriter(transport, transport.getWritePacketSize(),
+                WRITE_QUEUE_SIZE, WRITE_TIMEOUT, writeStrand, stats);
 
         Intent intent = new Intent(ACTION_USB_READY);
         reactContext.sendBroadcast(intent);
@@ -132,104 +378,734 @@ public class SerialConnection {
         reactContext.sendBroadcast(intent);
 
         readThread = new ReadThread();
-        bufferThread = new BufferThread();
+        frameTask = new FrameTask();
 
-        Log.d("BOROLIS", "SerialConnection: " + deviceName + " Started");
+        SerialLog.d("SerialConnection: " + deviceName + " Started");
         readThread.start();
-        Log.d("BOROLIS", "SerialConnection: " + deviceName + " ReadThread started");
-        bufferThread.start();
-        Log.d("BOROLIS", "SerialConnection: " + deviceName + " BufferThread started");
+        SerialLog.d("SerialConnection: " + deviceName + " ReadThread started");
     }
 
     public void writeBytes(byte[] bytes)
+    {
+        writeBytes(bytes, null);
+    }
+
+    /**
+     * Queues the bytes on the connection's writer; the callback runs on a write reactor thread.
+     */
+    public void writeBytes(byte[] bytes, SerialWriter.WriteCallback callback)
     {
         if(!isOpened())
         {
             eventEmit(onErrorEvent, createError(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
                     Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE));
+            if (callback != null)
+            {
+                callback.onFailed(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
+                        Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE);
+            }
+            return;
+        }
+        serialWriter.write(bytes, callback);
+    }
+
+    /**
+     * Queues a request/response exchange. Transactions of a connection run one after another;
+     * while one is waiting for its response, received bytes go to it instead of the frame decoder.
+     * The transaction's callback runs on the framing strand.
+     */
+    public void transact(final SerialTransaction transaction)
+    {
+        if(!isOpened())
+        {
+            transaction.fail(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
+                    Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE);
+            return;
+        }
+        frameStrand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                frameTask.enqueueTransaction(transaction);
+            }
+        });
+    }
+
+    public void flush(SerialWriter.WriteCallback callback)
+    {
+        if(!isOpened())
+        {
+            callback.onFailed(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
+                    Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE);
             return;
         }
-        outputStream.write(bytes);
-//        outputStream.write(bytes);
-//        try {
-//            outputStream.flush();
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//        }
+        serialWriter.flush(callback);
     }
 
+    private static final long BUFFER_FULL_BACKOFF_NANOS = 1000000L;
+    private static final long OVERFLOW_EVENT_INTERVAL_NANOS = 1000000000L;
+    private static final int MAX_READ_FAILURES = 3;
+    private static final long READ_FAILURE_BACKOFF_NANOS = 10000000L;
+
+    private void scheduleFraming()
+    {
+        if (frameScheduled.compareAndSet(false, true))
+        {
+            frameStrand.execute(frameTask);
+        }
+    }
+
+    /**
+     * USB bulk reads only exist as blocking calls, so every port keeps one reader thread.
+     * Everything after the ring buffer runs on the shared reactor.
+     */
     private class ReadThread extends Thread {
         private AtomicBoolean keep = new AtomicBoolean(true);
+        private final byte[] chunk = new byte[readChunkSize];
+
         @Override
         public void run()
         {
+            int failures = 0;
             while(keep.get())
             {
-                if(inputStream == null) {
-                    return;
+                int length;
+                try
+                {
+                    length = transport.read(chunk);
+                }
+                catch (Exception e)
+                {
+                    length = -1;
                 }
 
-                byte value = -1;
+                if (length < 0)
+                {
+                    if (++failures >= MAX_READ_FAILURES)
+                    {
+                        onTransportLost();
+                        return;
+                    }
+                    LockSupport.parkNanos(READ_FAILURE_BACKOFF_NANOS);
+                    continue;
+                }
+                failures = 0;
+                // one receive time for the whole read, however it is published
+                long receivedNanos = SerialClock.now();
 
-                try
+                SerialCapture currentCapture = capture;
+                if (currentCapture != null && length > 0)
                 {
-                     value = (byte) inputStream.read();
+                    currentCapture.record(SerialCapture.RECORD_IN, chunk, 0, length);
                 }
-                catch (Exception e)
+
+                if (readMode == Definitions.READ_MODE_BULK)
                 {
-                    return;
+                    publish(0, length, receivedNanos);
                 }
-                if(value != -1)
+                else
                 {
-                    serialBuffer.add(value);
-                    lastDataReceivedTime.set(System.currentTimeMillis());
-                    Log.d("BOROLIS", "read" + ":" + value);
+                    for (int i = 0; i < length; i++)
+                    {
+                        publish(i, 1, receivedNanos);
+                        if (SerialLog.isVerboseEnabled() && SerialLog.sample())
+                        {
+                            SerialLog.v("read" + ":" + (chunk[i] & 0xFF));
+                        }
+                    }
                 }
             }
         }
 
+        private void publish(int start, int length, long receivedNanos)
+        {
+            if (length <= 0)
+            {
+                return;
+            }
+            // stamp before publishing so the consumer never sees new bytes with an old time
+            lastDataReceivedTime.set(System.nanoTime());
+            int offset = start + serialBuffer.add(chunk, start, length, receivedNanos);
+            int end = start + length;
+            while (offset < end && keep.get())
+            {
+                scheduleFraming();
+                LockSupport.parkNanos(BUFFER_FULL_BACKOFF_NANOS);
+                lastDataReceivedTime.set(System.nanoTime());
+                offset += serialBuffer.add(chunk, offset, end - offset, receivedNanos);
+            }
+            if (offset < end)
+            {
+                // closing while the buffer was full
+                stats.onBytesDropped(end - offset);
+            }
+            stats.onBytesRead(length, serialBuffer.getSize());
+            scheduleFraming();
+        }
+
+        private void onTransportLost()
+        {
+            if (!isConnectionOpened)
+            {
+                return;
+            }
+            SerialLog.w("SerialConnection: " + deviceName + " stopped reading", null);
+            WritableMap map = createError(Definitions.ERROR_NOT_READED_DATA,
+                    Definitions.ERROR_NOT_READED_DATA_MESSAGE);
+            map.putString("deviceName", deviceName);
+            eventEmit(onErrorEvent, map);
+            // torn down like a detached device: pending transactions and writes fail and the transport is let go
+            closeConnection();
+            if (listener != null)
+            {
+                listener.onTransportLost(SerialConnection.this);
+            }
+        }
+
         public void setKeep(boolean keep){
             this.keep.set(keep);
         }
     }
 
-    private class BufferThread extends Thread {
-        private AtomicBoolean keep = new AtomicBoolean(true);
+    /**
+     * Drains the ring buffer into the frame decoder. Runs only on frameStrand,
+     * so the decoder and the idle timer need no locking.
+     */
+    private class FrameTask implements Runnable, FrameDecoder.FrameListener {
+        private final byte[] drainBuffer = new byte[readChunkSize];
+        private FrameDecoder frameDecoder = FrameDecoderFactory.createDefault();
+        private ScheduledFuture<?> idleTimer;
+
+        private FrameProcessor frameProcessor;
+        private ScheduledFuture<?> processorTimer;
+
+        // receive time of the bytes being dispatched, and of the first byte of the frame being decoded
+        private long chunkNanos;
+        private long frameStartNanos;
+
+        private final Runnable idleTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                idleTimer = null;
+                checkIdle();
+            }
+        };
+
+        // set when the buffer limit was hit under the pauseReading policy
+        private boolean readingPaused = false;
+        private int overflows = 0;
+        private long overflowDroppedBytes = 0;
+        // policy in force at the last overflow
+        private String overflowPolicy;
+        private long lastOverflowEventNanos = System.nanoTime() - OVERFLOW_EVENT_INTERVAL_NANOS;
+        private ScheduledFuture<?> overflowTimer;
+
+        private final Runnable resumeReadingTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                readingPaused = false;
+                if (!isConnectionOpened)
+                {
+                    return;
+                }
+                // the held bytes go out as a frame so the limit holds once reading resumes
+                frameDecoder.onIdle(FrameTask.this);
+                drain();
+                checkIdle();
+            }
+        };
+
+        private final Runnable overflowEventTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                overflowTimer = null;
+                emitOverflow();
+            }
+        };
+
+        private final ArrayDeque<SerialTransaction> transactions = new ArrayDeque<>();
+        private SerialTransaction activeTransaction;
+        private ScheduledFuture<?> transactionTimer;
+        // identifies the active transaction for timers and write callbacks that arrive late
+        private int transactionId = 0;
+
+        private final Runnable startTransactionTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                startNextTransaction();
+            }
+        };
+
         @Override
         public void run()
         {
-            while(keep.get())
+            // cleared first: bytes published from here on schedule another run
+            frameScheduled.set(false);
+            if (!isConnectionOpened)
+            {
+                return;
+            }
+            drain();
+            checkIdle();
+        }
+
+        private void drain()
+        {
+            int length;
+            while (!readingPaused && (length = serialBuffer.drainChunk(drainBuffer, 0, drainBuffer.length)) > 0)
             {
-                try {
-                    Thread.sleep(50);
-                } catch (Exception e) {
+                chunkNanos = serialBuffer.getDrainedTimestamp();
+                dispatch(drainBuffer, 0, length);
+            }
+        }
+
+        private void dispatch(byte[] data, int offset, int length)
+        {
+            while (length > 0)
+            {
+                if (activeTransaction == null)
+                {
+                    decode(data, offset, length);
                     return;
                 }
-                currentTime.set(System.currentTimeMillis());
-                if ((currentTime.get() - lastDataReceivedTime.get() > 200L) && (lastDataReceivedTime.get() != 0)
-                        && !(serialBuffer.isEmpty()))
+                int consumed = activeTransaction.accept(data, offset, length);
+                offset += consumed;
+                length -= consumed;
+                if (activeTransaction.isComplete())
+                {
+                    finishTransaction();
+                }
+            }
+        }
+
+        /**
+         * Feeds the decoder at most bufferLimit bytes at a time, so bytes held for an unfinished
+         * frame never exceed twice the limit however long the line stays busy.
+         */
+        private void decode(byte[] data, int offset, int length)
+        {
+            if (!frameDecoder.hasPendingData())
+            {
+                frameStartNanos = chunkNanos;
+            }
+            while (length > 0)
+            {
+                int limit = bufferLimit;
+                int size = Math.min(length, limit);
+                frameDecoder.decode(data, offset, size, this);
+                offset += size;
+                length -= size;
+                if (frameDecoder.getPendingLength() > limit)
+                {
+                    onPendingOverflow(limit);
+                }
+            }
+        }
+
+        private void onPendingOverflow(int limit)
+        {
+            String policy = bufferOverflowPolicy;
+            if (Definitions.BUFFER_OVERFLOW_PAUSE_READING.equals(policy))
+            {
+                // the rest of this chunk is still decoded; after that the ring buffer fills up,
+                // the read thread stops reading and the device is held back by the USB flow control
+                if (!readingPaused)
+                {
+                    readingPaused = true;
+                    frameStrand.schedule(resumeReadingTask, frameTimeoutNanos);
+                    onOverflow(policy, 0);
+                }
+                return;
+            }
+            onOverflow(policy, frameDecoder.limitPending(limit, policy, this));
+        }
+
+        // counts are coalesced into at most one event per interval
+        private void onOverflow(String policy, int droppedBytes)
+        {
+            stats.onBufferOverflow();
+            if (droppedBytes > 0)
+            {
+                stats.onBytesDropped(droppedBytes);
+            }
+            overflows++;
+            overflowDroppedBytes += droppedBytes;
+            overflowPolicy = policy;
+            if (overflowTimer == null)
+            {
+                long delay = lastOverflowEventNanos + OVERFLOW_EVENT_INTERVAL_NANOS - System.nanoTime();
+                if (delay <= 0)
+                {
+                    emitOverflow();
+                }
+                else
                 {
-                    String dataKey = "data";
-                    String deviceNameKey = "deviceName";
+                    overflowTimer = frameStrand.schedule(overflowEventTask, delay);
+                }
+            }
+        }
+
+        private void emitOverflow()
+        {
+            if (overflows == 0)
+            {
+                return;
+            }
+            WritableMap reactMap = Arguments.createMap();
+            reactMap.putString("deviceName", deviceName);
+            reactMap.putString("policy", overflowPolicy);
+            reactMap.putInt("overflows", overflows);
+            reactMap.putDouble("droppedBytes", overflowDroppedBytes);
+            eventEmit(onBufferOverflow, reactMap);
+            overflows = 0;
+            overflowDroppedBytes = 0;
+            lastOverflowEventNanos = System.nanoTime();
+        }
 
-                    WritableMap reactMap = Arguments.createMap();
+        void replaceFrameDecoder(FrameDecoder newFrameDecoder)
+        {
+            frameDecoder.onIdle(this);
+            frameDecoder = newFrameDecoder;
+            checkIdle();
+        }
+
+        void replaceFrameProcessor(final FrameProcessor newFrameProcessor)
+        {
+            if (processorTimer != null)
+            {
+                processorTimer.cancel(false);
+                processorTimer = null;
+            }
+            if (frameProcessor != null)
+            {
+                frameProcessor.onInterval(processorOutput);
+            }
+            frameProcessor = newFrameProcessor;
+            if (newFrameProcessor != null && newFrameProcessor.getIntervalNanos() > 0)
+            {
+                processorTimer = frameStrand.scheduleAtFixedRate(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // a tick queued before the processor was replaced must not cut the new one's window short
+                        if (frameProcessor == newFrameProcessor)
+                        {
+                            newFrameProcessor.onInterval(processorOutput);
+                        }
+                    }
+                }, newFrameProcessor.getIntervalNanos());
+            }
+        }
 
-                    reactMap.putString(deviceNameKey, deviceName);
-                    reactMap.putString(dataKey, bytesToHex(serialBuffer.getBufferArray()));
+        void enqueueTransaction(SerialTransaction transaction)
+        {
+            if (!isConnectionOpened)
+            {
+                transaction.fail(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
+                        Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE);
+                return;
+            }
+            transactions.addLast(transaction);
+            if (activeTransaction == null)
+            {
+                startNextTransaction();
+            }
+        }
 
-                    Log.d("BOROLIS",
-                            "DATA FROM SERIAL:{" + bytesToHex(serialBuffer.getBufferArray()) + "}" + '\n' +
-                                    "DATA FROM DEVICE NAME:{" + deviceName + "}" + '\n');
+        private void startNextTransaction()
+        {
+            if (activeTransaction != null || transactions.isEmpty() || !isConnectionOpened)
+            {
+                return;
+            }
+            // bytes that arrived before the request are not part of its response
+            drain();
 
-                    eventEmit(onReadDataFromPort, reactMap);
+            activeTransaction = transactions.pollFirst();
+            final int id = ++transactionId;
+            transactionTimer = frameStrand.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    failTransaction(id, Definitions.ERROR_TRANSACTION_TIMEOUT,
+                            Definitions.ERROR_TRANSACTION_TIMEOUT_MESSAGE);
+                }
+            }, activeTransaction.getTimeoutNanos());
+            serialWriter.write(activeTransaction.getPayload(), new SerialWriter.WriteCallback()
+            {
+                @Override
+                public void onWritten(int bytesWritten)
+                {
+                }
 
-                    serialBuffer.clean();
+                @Override
+                public void onFailed(final int errorCode, final String errorMessage)
+                {
+                    frameStrand.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            failTransaction(id, errorCode, errorMessage);
+                        }
+                    });
                 }
+            });
+        }
+
+        private void finishTransaction()
+        {
+            SerialTransaction transaction = endTransaction();
+            transaction.complete();
+            // started from a new task so the rest of the current chunk goes to the decoder first
+            frameStrand.execute(startTransactionTask);
+        }
+
+        private void failTransaction(int id, int errorCode, String errorMessage)
+        {
+            if (activeTransaction == null || id != transactionId)
+            {
+                return;
             }
+            endTransaction().fail(errorCode, errorMessage);
+            frameStrand.execute(startTransactionTask);
         }
 
-        public void setKeep(boolean keep){
-            this.keep.set(keep);
+        private SerialTransaction endTransaction()
+        {
+            SerialTransaction transaction = activeTransaction;
+            activeTransaction = null;
+            if (transactionTimer != null)
+            {
+                transactionTimer.cancel(false);
+                transactionTimer = null;
+            }
+            return transaction;
+        }
+
+        void failTransactions()
+        {
+            if (activeTransaction != null)
+            {
+                endTransaction().fail(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
+                        Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE);
+            }
+            SerialTransaction transaction;
+            while ((transaction = transactions.pollFirst()) != null)
+            {
+                transaction.fail(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
+                        Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE);
+            }
+        }
+
+        private boolean hasPendingData()
+        {
+            return frameDecoder.hasPendingData() || (activeTransaction != null
+                    && activeTransaction.endsOnIdle() && activeTransaction.hasResponseData());
+        }
+
+        /**
+         * Flushes a partial frame, or ends an open-ended response, once the line has been quiet
+         * for the frame timeout, otherwise arms a timer for the remaining time.
+         */
+        void checkIdle()
+        {
+            if (!isConnectionOpened || !hasPendingData())
+            {
+                return;
+            }
+            long remaining = lastDataReceivedTime.get() + frameTimeoutNanos - System.nanoTime();
+            if (remaining > 0)
+            {
+                if (idleTimer == null)
+                {
+                    idleTimer = frameStrand.schedule(idleTask, remaining);
+                }
+            }
+            else if (serialBuffer.isEmpty())
+            {
+                if (frameDecoder.hasPendingData())
+                {
+                    frameDecoder.onIdle(this);
+                }
+                if (activeTransaction != null && activeTransaction.endsOnIdle()
+                        && activeTransaction.hasResponseData())
+                {
+                    finishTransaction();
+                }
+            }
+        }
+
+        void cancelIdleTimer()
+        {
+            if (idleTimer != null)
+            {
+                idleTimer.cancel(false);
+                idleTimer = null;
+            }
+        }
+
+        // decoded frame, on its way to the processor if there is one
+        @Override
+        public void onFrame(byte[] frame, int offset, int length)
+        {
+            // a frame ends in the bytes dispatched last; the next one starts in them at the earliest
+            long firstByteNanos = frameStartNanos;
+            frameStartNanos = chunkNanos;
+            if (frameProcessor == null)
+            {
+                emitFrame(frame, offset, length, firstByteNanos, chunkNanos);
+                return;
+            }
+            frameProcessor.process(frame, offset, length, firstByteNanos, chunkNanos, processorOutput);
+        }
+
+        private final FrameProcessor.Output processorOutput = new FrameProcessor.Output()
+        {
+            @Override
+            public void onFrame(byte[] frame, int offset, int length, long firstByteNanos, long lastByteNanos)
+            {
+                emitFrame(frame, offset, length, firstByteNanos, lastByteNanos);
+            }
+
+            @Override
+            public void onAggregate(int frameCount, double[] min, double[] max, double[] mean)
+            {
+                WritableArray fields = Arguments.createArray();
+                for (int i = 0; i < mean.length; i++)
+                {
+                    WritableMap field = Arguments.createMap();
+                    field.putDouble("min", min[i]);
+                    field.putDouble("max", max[i]);
+                    field.putDouble("mean", mean[i]);
+                    fields.pushMap(field);
+                }
+                WritableMap reactMap = Arguments.createMap();
+                reactMap.putString("deviceName", deviceName);
+                reactMap.putInt("count", frameCount);
+                reactMap.putArray("fields", fields);
+                eventEmit(onFrameAggregate, reactMap);
+            }
+        };
+    }
+
+    // only used on frameStrand
+    private char[] encodeChars = new char[0];
+    private SerialTextDecoder textDecoder = new SerialTextDecoder(Charset.forName(TEXT_CHARSET), null, BUFFER_LIMIT);
+    // receive times of the frame being decoded to text
+    private long textFirstByteNanos;
+    private long textLastByteNanos;
+
+    private final SerialTextDecoder.Output textOutput = new SerialTextDecoder.Output()
+    {
+        @Override
+        public void onText(String text)
+        {
+            WritableMap reactMap = Arguments.createMap();
+            reactMap.putString("deviceName", deviceName);
+            reactMap.putInt("dataType", Definitions.RETURNED_DATA_TYPE_TEXT);
+            reactMap.putString("data", text);
+            emitDataMap(reactMap, textFirstByteNanos, textLastByteNanos);
+        }
+    };
+
+    private char[] ensureEncodeChars(int length)
+    {
+        if (encodeChars.length < length)
+        {
+            encodeChars = new char[Math.max(length, encodeChars.length * 2)];
+        }
+        return encodeChars;
+    }
+
+    /**
+     * Builds the event payload for received bytes in the connection's returned data type.
+     * Only to be called on frameStrand.
+     */
+    public WritableMap createDataMap(byte[] frame, int offset, int length)
+    {
+        String dataKey = "data";
+        String dataTypeKey = "dataType";
+        String deviceNameKey = "deviceName";
+
+        WritableMap reactMap = Arguments.createMap();
+        int dataType = returnedDataType;
+
+        reactMap.putString(deviceNameKey, deviceName);
+        reactMap.putInt(dataTypeKey, dataType);
+        switch (dataType)
+        {
+            case Definitions.RETURNED_DATA_TYPE_INTARRAY:
+                WritableArray intArray = Arguments.createArray();
+                for (int i = offset; i < offset + length; i++)
+                {
+                    intArray.pushInt(frame[i] & 0xFF);
+                }
+                reactMap.putArray(dataKey, intArray);
+                break;
+            case Definitions.RETURNED_DATA_TYPE_TEXT:
+                // stateless; only frames on their way to onReadDataFromPort are decoded incrementally
+                reactMap.putString(dataKey, new String(frame, offset, length, textDecoder.getCharset()));
+                break;
+            case Definitions.RETURNED_DATA_TYPE_BASE64:
+                int base64Length = SerialCodec.base64Encode(frame, offset, length,
+                        ensureEncodeChars(SerialCodec.base64EncodedLength(length)), 0);
+                reactMap.putString(dataKey, new String(encodeChars, 0, base64Length));
+                break;
+            default:
+                int hexLength = SerialCodec.hexEncode(frame, offset, length,
+                        ensureEncodeChars(SerialCodec.hexEncodedLength(length)), 0);
+                reactMap.putString(dataKey, new String(encodeChars, 0, hexLength));
+                break;
+        }
+        return reactMap;
+    }
+
+    /**
+     * In text mode a frame may complete several lines, each emitted with the frame's receive times, or none.
+     */
+    private void emitFrame(byte[] frame, int offset, int length, long firstByteNanos, long lastByteNanos)
+    {
+        if (SerialLog.isDebugEnabled() && SerialLog.sample())
+        {
+            SerialLog.d("DATA FROM SERIAL:{" + SerialCodec.hexEncode(frame, offset, length) + "}" + '\n' +
+                    "DATA FROM DEVICE NAME:{" + deviceName + "}" + '\n');
+        }
+
+        stats.onFrameEmitted(System.nanoTime() - lastByteNanos);
+        if (returnedDataType == Definitions.RETURNED_DATA_TYPE_TEXT)
+        {
+            textFirstByteNanos = firstByteNanos;
+            textLastByteNanos = lastByteNanos;
+            textDecoder.decode(frame, offset, length, textOutput);
+            return;
+        }
+        emitDataMap(createDataMap(frame, offset, length), firstByteNanos, lastByteNanos);
+    }
+
+    /**
+     * Receive times are reported in nanoseconds since SerialClock's anchor, with the anchor's wall clock time.
+     */
+    private void emitDataMap(WritableMap reactMap, long firstByteNanos, long lastByteNanos)
+    {
+        reactMap.putDouble("firstByteNanos", SerialClock.sinceAnchor(firstByteNanos));
+        reactMap.putDouble("lastByteNanos", SerialClock.sinceAnchor(lastByteNanos));
+        reactMap.putDouble("anchorEpochMillis", SerialClock.ANCHOR_EPOCH_MILLIS);
+
+        if (!eventBatcher.offer(reactMap, stats))
+        {
+            eventEmit(onReadDataFromPort, reactMap);
         }
     }
 
@@ -0,0 +1,127 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one connection. Every field is updated without locks from the thread that owns the event,
+ * so they can stay on in production; readers get a consistent value per field, not a snapshot.
+ */
+public class SerialConnectionStats
+{
+    private final AtomicLong bytesIn = new AtomicLong(0);
+    private final AtomicLong bytesOut = new AtomicLong(0);
+    private final AtomicLong framesIn = new AtomicLong(0);
+    private final AtomicLong framesOut = new AtomicLong(0);
+    private final AtomicLong droppedBytes = new AtomicLong(0);
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+    private final AtomicLong failedWrites = new AtomicLong(0);
+    private final AtomicLong bufferOverflows = new AtomicLong(0);
+    // written only by the read thread
+    private final AtomicLong bufferHighWaterMark = new AtomicLong(0);
+
+    private final LatencyHistogram emitLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    public void onBytesRead(int count, int bufferedBytes)
+    {
+        bytesIn.addAndGet(count);
+        if (bufferedBytes > bufferHighWaterMark.get())
+        {
+            bufferHighWaterMark.lazySet(bufferedBytes);
+        }
+    }
+
+    public void onFrameEmitted(long latencyNanos)
+    {
+        framesIn.incrementAndGet();
+        emitLatency.record(latencyNanos);
+    }
+
+    public void onWritten(int count, long latencyNanos)
+    {
+        bytesOut.addAndGet(count);
+        framesOut.incrementAndGet();
+        writeLatency.record(latencyNanos);
+    }
+
+    public void onWriteFailed()
+    {
+        failedWrites.incrementAndGet();
+    }
+
+    public void onBytesDropped(int count)
+    {
+        droppedBytes.addAndGet(count);
+    }
+
+    public void onBufferOverflow()
+    {
+        bufferOverflows.incrementAndGet();
+    }
+
+    public void onEventDropped()
+    {
+        droppedEvents.incrementAndGet();
+    }
+
+    public long getBytesIn()
+    {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut()
+    {
+        return bytesOut.get();
+    }
+
+    public long getFramesIn()
+    {
+        return framesIn.get();
+    }
+
+    public long getFramesOut()
+    {
+        return framesOut.get();
+    }
+
+    public long getDroppedBytes()
+    {
+        return droppedBytes.get();
+    }
+
+    public long getDroppedEvents()
+    {
+        return droppedEvents.get();
+    }
+
+    public long getFailedWrites()
+    {
+        return failedWrites.get();
+    }
+
+    public long getBufferOverflows()
+    {
+        return bufferOverflows.get();
+    }
+
+    public long getBufferHighWaterMark()
+    {
+        return bufferHighWaterMark.get();
+    }
+
+    /**
+     * From the read of the last chunk of a frame to its emit.
+     */
+    public LatencyHistogram getEmitLatency()
+    {
+        return emitLatency;
+    }
+
+    /**
+     * From queueing a write to the device accepting it.
+     */
+    public LatencyHistogram getWriteLatency()
+    {
+        return writeLatency;
+    }
+}
@@ -0,0 +1,128 @@
+package com.melihyarikkaya.rnserialport;
+
+import android.util.Log;
+
+/**
+ * Level-gated logging. Hot paths must check isVerboseEnabled()/isDebugEnabled()
+ * (and sample()) before building a message, so nothing is allocated while disabled.
+ */
+public final class SerialLog
+{
+    public static final String TAG = "BOROLIS";
+
+    public static final String LEVEL_VERBOSE = "verbose";
+    public static final String LEVEL_DEBUG = "debug";
+    public static final String LEVEL_INFO = "info";
+    public static final String LEVEL_WARN = "warn";
+    public static final String LEVEL_ERROR = "error";
+    public static final String LEVEL_NONE = "none";
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private static volatile int level = Log.INFO;
+    private static volatile int sampleRate = 1;
+    // racy on purpose, sampling only needs to be roughly 1 in sampleRate
+    private static int sampleCounter = 0;
+
+    private SerialLog()
+    {
+    }
+
+    public static void setLevel(String levelName, int rate)
+    {
+        if (rate <= 0)
+        {
+            throw new IllegalArgumentException("Sample rate must be positive");
+        }
+        level = toPriority(levelName);
+        sampleRate = rate;
+    }
+
+    public static boolean isVerboseEnabled()
+    {
+        return level <= Log.VERBOSE;
+    }
+
+    public static boolean isDebugEnabled()
+    {
+        return level <= Log.DEBUG;
+    }
+
+    /**
+     * For per-byte and per-frame messages: true for one call in every sampleRate.
+     */
+    public static boolean sample()
+    {
+        int rate = sampleRate;
+        return rate == 1 || (++sampleCounter % rate) == 0;
+    }
+
+    public static void v(String message)
+    {
+        if (level <= Log.VERBOSE)
+        {
+            Log.v(TAG, message);
+        }
+    }
+
+    public static void d(String message)
+    {
+        if (level <= Log.DEBUG)
+        {
+            Log.d(TAG, message);
+        }
+    }
+
+    public static void i(String message)
+    {
+        if (level <= Log.INFO)
+        {
+            Log.i(TAG, message);
+        }
+    }
+
+    public static void w(String message, Throwable error)
+    {
+        if (level <= Log.WARN)
+        {
+            Log.w(TAG, message, error);
+        }
+    }
+
+    public static void e(String message, Throwable error)
+    {
+        if (level <= Log.ERROR)
+        {
+            Log.e(TAG, message, error);
+        }
+    }
+
+    private static int toPriority(String levelName)
+    {
+        if (LEVEL_VERBOSE.equals(levelName))
+        {
+            return Log.VERBOSE;
+        }
+        if (LEVEL_DEBUG.equals(levelName))
+        {
+            return Log.DEBUG;
+        }
+        if (LEVEL_INFO.equals(levelName))
+        {
+            return Log.INFO;
+        }
+        if (LEVEL_WARN.equals(levelName))
+        {
+            return Log.WARN;
+        }
+        if (LEVEL_ERROR.equals(levelName))
+        {
+            return Log.ERROR;
+        }
+        if (LEVEL_NONE.equals(levelName))
+        {
+            return NONE;
+        }
+        throw new IllegalArgumentException("Unknown log level: " + levelName);
+    }
+}
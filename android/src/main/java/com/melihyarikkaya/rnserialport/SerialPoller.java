@@ -0,0 +1,284 @@
+package com.melihyarikkaya.rnserialport;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onErrorEvent;
+import static com.melihyarikkaya.rnserialport.ReactNativeEvents.onPollData;
+
+/**
+ * Periodic request/response polls of one connection, so steady-state polling needs no bridge calls.
+ * Polls are sent on a fixed grid of deadlines: a late tick does not shift the ones after it,
+ * and a tick that finds the previous exchange still running is skipped instead of queued.
+ * In changes-only mode a response is emitted only when its hash differs from the previous one.
+ */
+public class SerialPoller
+{
+    private final ReactContext reactContext;
+    private final SerialConnection connection;
+    private final SerialReactor.Strand strand;
+    private final Map<Integer, Poll> polls = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    public SerialPoller(ReactContext reactContext, SerialConnection connection, SerialReactor.Strand strand)
+    {
+        this.reactContext = reactContext;
+        this.connection = connection;
+        this.strand = strand;
+    }
+
+    /**
+     * @param prototype transaction copied for every poll; its callback is not used
+     * @return poll id, unique within the connection
+     */
+    public int start(SerialTransaction prototype, long periodNanos, boolean changesOnly)
+    {
+        if (periodNanos <= 0)
+        {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        final Poll poll = new Poll(nextId.getAndIncrement(), prototype, periodNanos, changesOnly);
+        polls.put(poll.id, poll);
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                poll.resume();
+            }
+        });
+        return poll.id;
+    }
+
+    /**
+     * @return false when there is no such poll
+     */
+    public boolean pause(int id)
+    {
+        final Poll poll = polls.get(id);
+        if (poll == null)
+        {
+            return false;
+        }
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                poll.pause();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Sends at once, then continues on a new grid from now.
+     *
+     * @return false when there is no such poll
+     */
+    public boolean resume(int id)
+    {
+        final Poll poll = polls.get(id);
+        if (poll == null)
+        {
+            return false;
+        }
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                poll.resume();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return false when there is no such poll
+     */
+    public boolean stop(int id)
+    {
+        final Poll poll = polls.remove(id);
+        if (poll == null)
+        {
+            return false;
+        }
+        strand.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                poll.pause();
+            }
+        });
+        return true;
+    }
+
+    public void stopAll()
+    {
+        for (Integer id : polls.keySet())
+        {
+            stop(id);
+        }
+    }
+
+    // FNV-1a, 64 bit
+    private static long hash(byte[] data, int length)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++)
+        {
+            hash ^= data[i] & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private class Poll
+    {
+        final int id;
+        final SerialTransaction prototype;
+        final long periodNanos;
+        final boolean changesOnly;
+
+        // confined to the poller strand
+        private ScheduledFuture<?> future;
+        private long deadlineNanos;
+        private boolean inFlight = false;
+        private boolean running = false;
+        private int generation = 0;
+
+        // confined to the connection's framing strand, where transaction callbacks run
+        private boolean hasLastResponse = false;
+        private long lastResponseHash;
+        private boolean failing = false;
+
+        private final Runnable exchangeDone = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                inFlight = false;
+            }
+        };
+
+        private final SerialTransaction.Callback callback = new SerialTransaction.Callback()
+        {
+            @Override
+            public void onResponse(byte[] response, int length)
+            {
+                long responseHash = hash(response, length);
+                if (!changesOnly || !hasLastResponse || responseHash != lastResponseHash)
+                {
+                    WritableMap map = connection.createDataMap(response, 0, length);
+                    map.putInt("pollId", id);
+                    eventEmit(onPollData, map);
+                }
+                hasLastResponse = true;
+                lastResponseHash = responseHash;
+                failing = false;
+                strand.execute(exchangeDone);
+            }
+
+            @Override
+            public void onFailed(int errorCode, String errorMessage)
+            {
+                // in changes-only mode, only the first failure of a run is reported
+                if (!changesOnly || !failing)
+                {
+                    WritableMap map = Arguments.createMap();
+                    map.putBoolean("status", false);
+                    map.putInt("errorCode", errorCode);
+                    map.putString("errorMessage", errorMessage);
+                    map.putString("deviceName", connection.getDeviceName());
+                    map.putInt("pollId", id);
+                    eventEmit(onErrorEvent, map);
+                }
+                hasLastResponse = false;
+                failing = true;
+                strand.execute(exchangeDone);
+            }
+        };
+
+        Poll(int id, SerialTransaction prototype, long periodNanos, boolean changesOnly)
+        {
+            this.id = id;
+            this.prototype = prototype;
+            this.periodNanos = periodNanos;
+            this.changesOnly = changesOnly;
+        }
+
+        void resume()
+        {
+            if (running || !polls.containsKey(id))
+            {
+                return;
+            }
+            running = true;
+            deadlineNanos = System.nanoTime();
+            tick(++generation);
+        }
+
+        void pause()
+        {
+            running = false;
+            // a tick already queued on the strand belongs to an older generation and does nothing
+            generation++;
+            if (future != null)
+            {
+                future.cancel(false);
+                future = null;
+            }
+        }
+
+        private void tick(final int token)
+        {
+            if (!running || token != generation)
+            {
+                return;
+            }
+            if (!inFlight)
+            {
+                inFlight = true;
+                connection.transact(prototype.copy(callback));
+            }
+            long now = System.nanoTime();
+            deadlineNanos += periodNanos;
+            if (deadlineNanos <= now)
+            {
+                // skip the slots already missed and stay on the grid
+                deadlineNanos += ((now - deadlineNanos) / periodNanos + 1) * periodNanos;
+            }
+            future = strand.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    tick(token);
+                }
+            }, deadlineNanos - now);
+        }
+    }
+
+    private void eventEmit(String eventName, Object data)
+    {
+        try
+        {
+            if (reactContext.hasActiveCatalystInstance())
+            {
+                reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, data);
+            }
+        }
+        catch (Exception error)
+        {
+        }
+    }
+}
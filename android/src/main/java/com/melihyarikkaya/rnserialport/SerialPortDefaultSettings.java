@@ -9,4 +9,22 @@ public class SerialPortDefaultSettings {
     public static final int FLOW_CONTROL = UsbSerialInterface.FLOW_CONTROL_OFF;
     public static final int BAUD_RATE = 9600;
     public static final int PORT_INTERFACE = -1;
+    public static final String DRIVER_TYPE = Definitions.DRIVER_TYPE_AUTO;
+    public static final int READ_MODE = Definitions.READ_MODE_BULK;
+    public static final int READ_CHUNK_SIZE = 64;
+    public static final long FRAME_TIMEOUT = 200L;
+    public static final int BUFFER_LIMIT = 64 * 1024;
+    public static final String TEXT_CHARSET = "UTF-8";
+    public static final String BUFFER_OVERFLOW_POLICY = Definitions.BUFFER_OVERFLOW_FLUSH_EARLY;
+    public static final int RETURNED_DATA_TYPE = Definitions.RETURNED_DATA_TYPE_HEXSTRING;
+    public static final int WRITE_QUEUE_SIZE = 256;
+    public static final int WRITE_TIMEOUT = 1000;
+    public static final int WRITE_THREADS = 2;
+    public static final int TRANSACTION_TIMEOUT = 1000;
+    public static final long PERMISSION_TIMEOUT = 30000L;
+    public static final int PERMISSION_ATTEMPTS = 3;
+    public static final long SHUTDOWN_TIMEOUT = 1000L;
+    public static final long CAPTURE_MAX_FILE_SIZE = 8L * 1024 * 1024;
+    public static final int CAPTURE_MAX_FILES = 4;
+    public static final int CAPTURE_BUFFER_SIZE = 256 * 1024;
 }
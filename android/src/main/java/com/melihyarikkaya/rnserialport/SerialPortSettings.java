@@ -0,0 +1,174 @@
+package com.melihyarikkaya.rnserialport;
+
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.felhr.usbserial.UsbSerialDevice;
+import com.felhr.usbserial.UsbSerialInterface;
+
+/**
+ * Line settings and driver selection applied when a connection is opened.
+ */
+public class SerialPortSettings
+{
+    private final int baudRate;
+    private final int dataBits;
+    private final int stopBits;
+    private final int parity;
+    private final int flowControl;
+    private final int portInterface;
+    private final String driverType;
+    private final int readChunkSize;
+
+    public SerialPortSettings(int baudRate, int dataBits, int stopBits, int parity, int flowControl,
+                              int portInterface, String driverType, int readChunkSize)
+    {
+        if (baudRate <= 0)
+        {
+            throw new IllegalArgumentException(Definitions.ERROR_CONNECT_BAUDRATE_EMPTY_MESSAGE);
+        }
+        if (dataBits < UsbSerialInterface.DATA_BITS_5 || dataBits > UsbSerialInterface.DATA_BITS_8)
+        {
+            throw new IllegalArgumentException("Invalid data bits: " + dataBits);
+        }
+        if (stopBits != UsbSerialInterface.STOP_BITS_1 && stopBits != UsbSerialInterface.STOP_BITS_15
+                && stopBits != UsbSerialInterface.STOP_BITS_2)
+        {
+            throw new IllegalArgumentException("Invalid stop bits: " + stopBits);
+        }
+        if (parity < UsbSerialInterface.PARITY_NONE || parity > UsbSerialInterface.PARITY_SPACE)
+        {
+            throw new IllegalArgumentException("Invalid parity: " + parity);
+        }
+        if (flowControl < UsbSerialInterface.FLOW_CONTROL_OFF || flowControl > UsbSerialInterface.FLOW_CONTROL_XON_XOFF)
+        {
+            throw new IllegalArgumentException("Invalid flow control: " + flowControl);
+        }
+        if (!isKnownDriverType(driverType))
+        {
+            throw new IllegalArgumentException(Definitions.ERROR_DRIVER_TYPE_NOT_FOUND_MESSAGE + ": " + driverType);
+        }
+        if (readChunkSize < 0)
+        {
+            throw new IllegalArgumentException("Read chunk size cannot be negative");
+        }
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.stopBits = stopBits;
+        this.parity = parity;
+        this.flowControl = flowControl;
+        this.portInterface = portInterface;
+        this.driverType = driverType;
+        this.readChunkSize = readChunkSize;
+    }
+
+    public static SerialPortSettings createDefault()
+    {
+        return new SerialPortSettings(SerialPortDefaultSettings.BAUD_RATE,
+                SerialPortDefaultSettings.DATA_BIT,
+                SerialPortDefaultSettings.STOP_BIT,
+                SerialPortDefaultSettings.PARITY,
+                SerialPortDefaultSettings.FLOW_CONTROL,
+                SerialPortDefaultSettings.PORT_INTERFACE,
+                SerialPortDefaultSettings.DRIVER_TYPE,
+                0);
+    }
+
+    /**
+     * Keys missing from options are taken from base.
+     */
+    public static SerialPortSettings fromOptions(ReadableMap options, SerialPortSettings base)
+    {
+        return new SerialPortSettings(getInt(options, "baudRate", base.baudRate),
+                getInt(options, "dataBits", base.dataBits),
+                getInt(options, "stopBits", base.stopBits),
+                getInt(options, "parity", base.parity),
+                getInt(options, "flowControl", base.flowControl),
+                getInt(options, "interface", base.portInterface),
+                options.hasKey("driver") && !options.isNull("driver") ? options.getString("driver") : base.driverType,
+                getInt(options, "readChunkSize", base.readChunkSize));
+    }
+
+    public SerialPortSettings withBaudRate(int newBaudRate)
+    {
+        return new SerialPortSettings(newBaudRate, dataBits, stopBits, parity, flowControl,
+                portInterface, driverType, readChunkSize);
+    }
+
+    public UsbSerialDevice createSerialDevice(UsbDevice device, UsbDeviceConnection connection)
+    {
+        if (Definitions.DRIVER_TYPE_AUTO.equals(driverType))
+        {
+            return UsbSerialDevice.createUsbSerialDevice(device, connection, portInterface);
+        }
+        return UsbSerialDevice.createUsbSerialDevice(driverType, device, connection, portInterface);
+    }
+
+    public void applyTo(UsbSerialDevice serialPort)
+    {
+        serialPort.setBaudRate(baudRate);
+        serialPort.setDataBits(dataBits);
+        serialPort.setStopBits(stopBits);
+        serialPort.setParity(parity);
+        serialPort.setFlowControl(flowControl);
+    }
+
+    public int getBaudRate()
+    {
+        return baudRate;
+    }
+
+    public int getDataBits()
+    {
+        return dataBits;
+    }
+
+    public int getStopBits()
+    {
+        return stopBits;
+    }
+
+    public int getParity()
+    {
+        return parity;
+    }
+
+    public int getFlowControl()
+    {
+        return flowControl;
+    }
+
+    public int getPortInterface()
+    {
+        return portInterface;
+    }
+
+    public String getDriverType()
+    {
+        return driverType;
+    }
+
+    /**
+     * @return 0 when the chunk size is taken from the USB endpoint
+     */
+    public int getReadChunkSize()
+    {
+        return readChunkSize;
+    }
+
+    private static boolean isKnownDriverType(String driverType)
+    {
+        return Definitions.DRIVER_TYPE_AUTO.equals(driverType)
+                || UsbSerialDevice.CDC.equals(driverType)
+                || UsbSerialDevice.CH34x.equals(driverType)
+                || UsbSerialDevice.CP210x.equals(driverType)
+                || UsbSerialDevice.FTDI.equals(driverType)
+                || UsbSerialDevice.PL2303.equals(driverType);
+    }
+
+    private static int getInt(ReadableMap options, String key, int defaultValue)
+    {
+        return options.hasKey(key) && !options.isNull(key) ? options.getInt(key) : defaultValue;
+    }
+}
@@ -0,0 +1,188 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small fixed pool shared by all connections. The module keeps one for framing and timeouts
+ * and a smaller one for writes, which block in the USB stack.
+ * Work of one connection is submitted through a Strand, which runs its tasks
+ * one at a time and in submission order on whichever pool thread is free.
+ */
+public class SerialReactor
+{
+    // tasks run by a strand before it yields its pool thread to other strands
+    private static final int STRAND_BUDGET = 64;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    public SerialReactor()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SerialReactor(int threadCount)
+    {
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, threadCount), new ReactorThreadFactory());
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    public Strand newStrand()
+    {
+        return new Strand();
+    }
+
+    public int getThreadCount()
+    {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Runs the tasks already handed to strands, such as the ones failing pending requests of closed
+     * connections, then stops the pool. Delayed and periodic tasks are dropped.
+     * Tasks still running after the timeout are interrupted.
+     */
+    public void shutdown(long timeoutMillis)
+    {
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.shutdown();
+        try
+        {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(Runnable task)
+    {
+        try
+        {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // reactor is shut down, the connections it served are closed
+        }
+    }
+
+    /**
+     * Serial view of the pool: tasks never overlap and run in submission order.
+     */
+    public class Strand implements Executor, Runnable
+    {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        @Override
+        public void execute(Runnable task)
+        {
+            tasks.offer(task);
+            if (scheduled.compareAndSet(false, true))
+            {
+                submit(this);
+            }
+        }
+
+        /**
+         * Runs the task on this strand after the delay.
+         */
+        public ScheduledFuture<?> schedule(final Runnable task, long delayNanos)
+        {
+            try
+            {
+                return executor.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        execute(task);
+                    }
+                }, delayNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                return null;
+            }
+        }
+
+        /**
+         * Runs the task on this strand every period until the returned future is cancelled.
+         */
+        public ScheduledFuture<?> scheduleAtFixedRate(final Runnable task, long periodNanos)
+        {
+            try
+            {
+                return executor.scheduleAtFixedRate(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        execute(task);
+                    }
+                }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                return null;
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            // once shut down the pool takes no requeued strands, so the queue is run to the end
+            for (int i = 0; i < STRAND_BUDGET || executor.isShutdown(); i++)
+            {
+                Runnable task = tasks.poll();
+                if (task == null)
+                {
+                    scheduled.set(false);
+                    // a task offered between poll() and set(false) found scheduled still true
+                    if (!tasks.isEmpty() && scheduled.compareAndSet(false, true))
+                    {
+                        submit(this);
+                    }
+                    return;
+                }
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException e)
+                {
+                    SerialLog.e("SerialReactor: task failed", e);
+                }
+            }
+            // budget used up, requeue behind the other strands
+            submit(this);
+        }
+    }
+
+    private static class ReactorThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "SerialReactor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
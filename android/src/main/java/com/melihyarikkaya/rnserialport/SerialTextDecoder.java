@@ -0,0 +1,151 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Turns received bytes into text incrementally: a character split across frames is completed
+ * by the next frame, and malformed input becomes U+FFFD. With a line terminator, only complete
+ * lines are passed on, without the terminator; a partial line is held for at most maxLineLength chars,
+ * plus a possible partial terminator, and passed on in pieces beyond that. Without one, whatever text each frame completes is passed on.
+ * Not thread-safe; a connection uses it on its framing strand only.
+ */
+public class SerialTextDecoder
+{
+    public interface Output
+    {
+        void onText(String text);
+    }
+
+    // a piece must hold a whole surrogate pair
+    public static final int MIN_LINE_LENGTH = 2;
+
+    // enough for the longest UTF-8 sequence that can be left over
+    private static final int CARRY_CAPACITY = 8;
+
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private final String lineTerminator;
+    private final int maxLineLength;
+
+    private ByteBuffer input = ByteBuffer.allocate(256);
+    private CharBuffer output = CharBuffer.allocate(256);
+    private final StringBuilder line = new StringBuilder();
+    // start of the terminator search in line, so a long line is not scanned again
+    private int searchFrom = 0;
+
+    /**
+     * @param lineTerminator null or empty to pass on text as it arrives
+     */
+    public SerialTextDecoder(Charset charset, String lineTerminator, int maxLineLength)
+    {
+        if (maxLineLength < MIN_LINE_LENGTH)
+        {
+            throw new IllegalArgumentException("Max line length must be at least " + MIN_LINE_LENGTH);
+        }
+        this.charset = charset;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.lineTerminator = lineTerminator == null || lineTerminator.isEmpty() ? null : lineTerminator;
+        this.maxLineLength = maxLineLength;
+    }
+
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    public void decode(byte[] data, int offset, int length, Output out)
+    {
+        // input holds the incomplete character of the previous call, ready to be appended to
+        if (input.remaining() < length)
+        {
+            ByteBuffer larger = ByteBuffer.allocate(input.position() + length);
+            input.flip();
+            larger.put(input);
+            input = larger;
+        }
+        input.put(data, offset, length);
+        input.flip();
+
+        int maxChars = (int) Math.ceil(input.remaining() * (double) decoder.maxCharsPerByte());
+        if (output.capacity() < maxChars)
+        {
+            output = CharBuffer.allocate(maxChars);
+        }
+        output.clear();
+        decoder.decode(input, output, false);
+        input.compact();
+        if (input.capacity() > 256 && input.position() <= CARRY_CAPACITY)
+        {
+            // a large chunk went through; keep only the carried bytes in a small buffer
+            ByteBuffer smaller = ByteBuffer.allocate(256);
+            input.flip();
+            smaller.put(input);
+            input = smaller;
+        }
+        output.flip();
+        if (!output.hasRemaining())
+        {
+            return;
+        }
+
+        if (lineTerminator == null)
+        {
+            out.onText(output.toString());
+            return;
+        }
+        line.append(output);
+        splitLines(out);
+    }
+
+    private void splitLines(Output out)
+    {
+        int start = 0;
+        int end;
+        while ((end = line.indexOf(lineTerminator, Math.max(searchFrom, start))) >= 0)
+        {
+            emitLine(start, end, out);
+            start = end + lineTerminator.length();
+        }
+        // the last chars may be the start of a terminator completed by the next call, so they stay
+        int keep = lineTerminator.length() - 1;
+        while (line.length() - start - keep > maxLineLength)
+        {
+            int pieceEnd = start + maxLineLength;
+            if (Character.isHighSurrogate(line.charAt(pieceEnd - 1)))
+            {
+                // keep surrogate pairs together
+                pieceEnd--;
+            }
+            emitLine(start, pieceEnd, out);
+            start = pieceEnd;
+        }
+        line.delete(0, start);
+        // a terminator may begin in the last few chars and end in the next call
+        searchFrom = Math.max(0, line.length() - lineTerminator.length() + 1);
+    }
+
+    private void emitLine(int start, int end, Output out)
+    {
+        out.onText(line.substring(start, end));
+    }
+
+    /**
+     * Passes on a pending partial line, for when the line goes idle or the decoder is replaced.
+     * A partial character is kept for the next frame.
+     */
+    public void flush(Output out)
+    {
+        if (line.length() > 0)
+        {
+            out.onText(line.toString());
+            line.setLength(0);
+        }
+        searchFrom = 0;
+    }
+}
@@ -0,0 +1,221 @@
+package com.melihyarikkaya.rnserialport;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One request/response exchange. The response ends after responseLength bytes, after the terminator,
+ * at the length a LengthResolver reads from its header, or, when none is given,
+ * after the connection's frame timeout of silence.
+ * With a start sequence, bytes received before it are dropped.
+ */
+public class SerialTransaction
+{
+    public interface Callback
+    {
+        void onResponse(byte[] response, int length);
+
+        void onFailed(int errorCode, String errorMessage);
+    }
+
+    /**
+     * Tells the response length from the bytes received so far, for protocols with a length in the header.
+     */
+    public interface LengthResolver
+    {
+        /**
+         * @return total response length, or 0 while more bytes are needed
+         */
+        int getResponseLength(byte[] response, int length);
+    }
+
+    private final byte[] payload;
+    private final int responseLength;
+    private final byte[] terminator;
+    private final byte[] startSequence;
+    private final long timeoutNanos;
+    private final LengthResolver lengthResolver;
+    private final Callback callback;
+
+    private byte[] response = new byte[64];
+    private int length = 0;
+    private boolean started;
+
+    public SerialTransaction(byte[] payload, int responseLength, byte[] terminator, byte[] startSequence,
+                             long timeoutNanos, Callback callback)
+    {
+        this(payload, responseLength, terminator, startSequence, timeoutNanos, null, callback);
+    }
+
+    public SerialTransaction(byte[] payload, byte[] startSequence, long timeoutNanos,
+                             LengthResolver lengthResolver, Callback callback)
+    {
+        this(payload, 0, null, startSequence, timeoutNanos, lengthResolver, callback);
+    }
+
+    private SerialTransaction(byte[] payload, int responseLength, byte[] terminator, byte[] startSequence,
+                              long timeoutNanos, LengthResolver lengthResolver, Callback callback)
+    {
+        if (responseLength < 0 || timeoutNanos <= 0)
+        {
+            throw new IllegalArgumentException("Response length and timeout must be positive");
+        }
+        if ((terminator != null && terminator.length == 0) || (startSequence != null && startSequence.length == 0))
+        {
+            throw new IllegalArgumentException("Terminator and start sequence cannot be empty");
+        }
+        this.payload = payload;
+        this.responseLength = responseLength;
+        this.terminator = terminator;
+        this.startSequence = startSequence;
+        this.timeoutNanos = timeoutNanos;
+        this.lengthResolver = lengthResolver;
+        this.callback = callback;
+        this.started = startSequence == null;
+    }
+
+    public static SerialTransaction fromOptions(byte[] payload, ReadableMap options, Callback callback)
+    {
+        return new SerialTransaction(payload,
+                options.hasKey("responseLength") ? options.getInt("responseLength") : 0,
+                getBytes(options, "terminator"),
+                getBytes(options, "start"),
+                TimeUnit.MILLISECONDS.toNanos(options.hasKey("timeout") ? options.getInt("timeout")
+                        : SerialPortDefaultSettings.TRANSACTION_TIMEOUT),
+                callback);
+    }
+
+    // "<key>Hex" takes a hex string, "<key>" a UTF-8 string
+    static byte[] getBytes(ReadableMap options, String key)
+    {
+        if (options.hasKey(key + "Hex"))
+        {
+            return SerialCodec.hexDecode(options.getString(key + "Hex"));
+        }
+        if (options.hasKey(key))
+        {
+            return options.getString(key).getBytes(Charset.forName("UTF-8"));
+        }
+        return null;
+    }
+
+    /**
+     * Fresh transaction with the same payload and response rules, for repeated exchanges.
+     */
+    public SerialTransaction copy(Callback callback)
+    {
+        return new SerialTransaction(payload, responseLength, terminator, startSequence, timeoutNanos,
+                lengthResolver, callback);
+    }
+
+    public byte[] getPayload()
+    {
+        return payload;
+    }
+
+    public long getTimeoutNanos()
+    {
+        return timeoutNanos;
+    }
+
+    /**
+     * True when only silence can end the response.
+     */
+    public boolean endsOnIdle()
+    {
+        return responseLength == 0 && terminator == null && lengthResolver == null;
+    }
+
+    public boolean hasResponseData()
+    {
+        return started && length > 0;
+    }
+
+    /**
+     * @return number of bytes consumed; less than count once the response is complete
+     */
+    public int accept(byte[] data, int offset, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            append(data[offset + i]);
+            if (!started)
+            {
+                if (endsWith(startSequence))
+                {
+                    started = true;
+                    System.arraycopy(response, length - startSequence.length, response, 0, startSequence.length);
+                    length = startSequence.length;
+                }
+                else if (length >= startSequence.length)
+                {
+                    // keep only what could still be the beginning of the start sequence
+                    System.arraycopy(response, 1, response, 0, length - 1);
+                    length--;
+                }
+            }
+            if (started && isComplete())
+            {
+                return i + 1;
+            }
+        }
+        return count;
+    }
+
+    public boolean isComplete()
+    {
+        if (!started)
+        {
+            return false;
+        }
+        if (responseLength > 0)
+        {
+            return length >= responseLength;
+        }
+        if (lengthResolver != null)
+        {
+            int expected = lengthResolver.getResponseLength(response, length);
+            return expected > 0 && length >= expected;
+        }
+        return terminator != null && endsWith(terminator);
+    }
+
+    public void complete()
+    {
+        callback.onResponse(response, length);
+    }
+
+    public void fail(int errorCode, String errorMessage)
+    {
+        callback.onFailed(errorCode, errorMessage);
+    }
+
+    private void append(byte value)
+    {
+        if (length == response.length)
+        {
+            response = Arrays.copyOf(response, response.length * 2);
+        }
+        response[length++] = value;
+    }
+
+    private boolean endsWith(byte[] suffix)
+    {
+        if (length < suffix.length)
+        {
+            return false;
+        }
+        int start = length - suffix.length;
+        for (int i = 0; i < suffix.length; i++)
+        {
+            if (response[start + i] != suffix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package com.melihyarikkaya.rnserialport;
+
+/**
+ * Byte pipe under a SerialConnection. Reads are blocking and called only by the connection's
+ * read thread; writes are called only from its writer strand.
+ */
+public interface SerialTransport
+{
+    boolean open();
+
+    /**
+     * Blocks until data arrives.
+     *
+     * @return number of bytes read, 0 when nothing arrived, -1 when the transport is gone
+     */
+    int read(byte[] buffer);
+
+    /**
+     * @return number of bytes accepted, less than length on timeout, -1 when the transport is gone
+     */
+    int write(byte[] data, int length, int timeoutMillis);
+
+    void configure(SerialPortSettings settings);
+
+    void setBaudRate(int baudRate);
+
+    /**
+     * Natural read size, e.g. the max packet size of the bulk IN endpoint.
+     */
+    int getReadPacketSize();
+
+    int getWritePacketSize();
+
+    void close();
+}
@@ -0,0 +1,286 @@
+package com.melihyarikkaya.rnserialport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-connection write pipeline. Writes are queued and sent on a strand of the write reactor,
+ * a small pool kept apart from framing because a USB write blocks for up to the write timeout;
+ * small writes that are queued back to back are coalesced up to one USB packet.
+ */
+public class SerialWriter
+{
+    public interface WriteCallback
+    {
+        void onWritten(int bytesWritten);
+
+        void onFailed(int errorCode, String errorMessage);
+    }
+
+    private static final int MAX_TRANSFER_SIZE = 16 * 1024;
+    // requests sent per turn, so one busy writer cannot hold a write thread indefinitely
+    private static final int DRAIN_BUDGET = 32;
+
+    private final SerialTransport transport;
+    private final int packetSize;
+    private final int writeTimeout;
+    private final BlockingQueue<WriteRequest> queue;
+    private final SerialReactor.Strand strand;
+    private final SerialConnectionStats stats;
+    private final WriteTask writeTask;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+
+    private volatile boolean closed = false;
+    private volatile SerialCapture capture;
+
+    public SerialWriter(SerialTransport transport, int packetSize, int queueSize, int writeTimeout,
+                        SerialReactor.Strand strand, SerialConnectionStats stats)
+    {
+        this.transport = transport;
+        this.packetSize = packetSize;
+        this.writeTimeout = writeTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.strand = strand;
+        this.stats = stats;
+        this.writeTask = new WriteTask();
+    }
+
+    public void write(byte[] data, WriteCallback callback)
+    {
+        enqueue(new WriteRequest(data, callback));
+    }
+
+    /**
+     * The callback is called once every write queued before the flush has been sent.
+     */
+    public void flush(WriteCallback callback)
+    {
+        enqueue(new WriteRequest(null, callback));
+    }
+
+    /**
+     * Records every byte accepted by the device, null to stop.
+     */
+    public void setCapture(SerialCapture capture)
+    {
+        this.capture = capture;
+    }
+
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    public void close()
+    {
+        closed = true;
+        failPending();
+    }
+
+    private void enqueue(WriteRequest request)
+    {
+        if (closed)
+        {
+            request.fail(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
+                    Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE);
+            return;
+        }
+        if (!queue.offer(request))
+        {
+            request.fail(Definitions.ERROR_WRITE_QUEUE_FULL, Definitions.ERROR_WRITE_QUEUE_FULL_MESSAGE);
+            return;
+        }
+        scheduleWrite();
+    }
+
+    private void scheduleWrite()
+    {
+        if (writeScheduled.compareAndSet(false, true))
+        {
+            strand.execute(writeTask);
+        }
+    }
+
+    private void failPending()
+    {
+        WriteRequest request;
+        while ((request = queue.poll()) != null)
+        {
+            request.fail(Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED,
+                    Definitions.ERROR_SERIALPORT_ALREADY_DISCONNECTED_MESSAGE);
+        }
+    }
+
+    private class WriteTask implements Runnable
+    {
+        private final List<WriteRequest> batch = new ArrayList<>();
+        private final byte[] coalesceBuffer = new byte[packetSize];
+
+        @Override
+        public void run()
+        {
+            // cleared first: a request queued from here on schedules another turn
+            writeScheduled.set(false);
+            boolean stalled = false;
+            for (int i = 0; i < DRAIN_BUDGET && !closed && !stalled; i++)
+            {
+                WriteRequest first = queue.poll();
+                if (first == null)
+                {
+                    return;
+                }
+
+                if (first.isFlush())
+                {
+                    first.complete(0);
+                    continue;
+                }
+
+                boolean sent;
+                if (first.data.length >= packetSize)
+                {
+                    int written = writeFully(first.data, first.data.length);
+                    sent = written == first.data.length;
+                    if (sent)
+                    {
+                        first.complete(written);
+                    }
+                    else
+                    {
+                        first.fail(Definitions.ERROR_WRITE_FAILED, Definitions.ERROR_WRITE_FAILED_MESSAGE);
+                    }
+                }
+                else
+                {
+                    sent = writeCoalesced(first);
+                }
+                stalled = !sent;
+            }
+            if (closed)
+            {
+                failPending();
+            }
+            else if (stalled && !queue.isEmpty())
+            {
+                // the device held this thread until the timeout; the next turn queues behind the other ports
+                if (writeScheduled.compareAndSet(false, true))
+                {
+                    strand.schedule(writeTask, 0);
+                }
+            }
+            else if (!queue.isEmpty())
+            {
+                scheduleWrite();
+            }
+        }
+
+        // returns false when the device did not take all of it
+        private boolean writeCoalesced(WriteRequest first)
+        {
+            batch.clear();
+            batch.add(first);
+            int length = first.data.length;
+            System.arraycopy(first.data, 0, coalesceBuffer, 0, length);
+
+            WriteRequest next;
+            while ((next = queue.peek()) != null && !next.isFlush()
+                    && length + next.data.length <= packetSize)
+            {
+                queue.poll();
+                System.arraycopy(next.data, 0, coalesceBuffer, length, next.data.length);
+                length += next.data.length;
+                batch.add(next);
+            }
+
+            int written = writeFully(coalesceBuffer, length);
+            boolean sent = written == length;
+            for (WriteRequest request : batch)
+            {
+                if (written >= request.data.length)
+                {
+                    request.complete(request.data.length);
+                    written -= request.data.length;
+                }
+                else
+                {
+                    written = 0;
+                    request.fail(Definitions.ERROR_WRITE_FAILED, Definitions.ERROR_WRITE_FAILED_MESSAGE);
+                }
+            }
+            return sent;
+        }
+
+        // returns the number of bytes accepted by the device
+        private int writeFully(byte[] data, int length)
+        {
+            int offset = 0;
+            while (offset < length)
+            {
+                int size = Math.min(length - offset, MAX_TRANSFER_SIZE);
+                byte[] transfer = offset == 0 ? data : Arrays.copyOfRange(data, offset, offset + size);
+                int written = transport.write(transfer, size, writeTimeout);
+                if (written <= 0)
+                {
+                    break;
+                }
+                SerialCapture currentCapture = capture;
+                if (currentCapture != null)
+                {
+                    currentCapture.record(SerialCapture.RECORD_OUT, transfer, 0, written);
+                }
+                offset += written;
+                if (written < size)
+                {
+                    break;
+                }
+            }
+            return offset;
+        }
+    }
+
+    private class WriteRequest
+    {
+        final byte[] data;
+        final WriteCallback callback;
+        final long queuedNanos = System.nanoTime();
+
+        WriteRequest(byte[] data, WriteCallback callback)
+        {
+            this.data = data;
+            this.callback = callback;
+        }
+
+        boolean isFlush()
+        {
+            return data == null;
+        }
+
+        void complete(int bytesWritten)
+        {
+            if (!isFlush())
+            {
+                stats.onWritten(bytesWritten, System.nanoTime() - queuedNanos);
+            }
+            if (callback != null)
+            {
+                callback.onWritten(bytesWritten);
+            }
+        }
+
+        void fail(int errorCode, String errorMessage)
+        {
+            if (!isFlush())
+            {
+                stats.onWriteFailed();
+            }
+            if (callback != null)
+            {
+                callback.onFailed(errorCode, errorMessage);
+            }
+        }
+    }
+}
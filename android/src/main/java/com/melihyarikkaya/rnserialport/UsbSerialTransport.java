@@ -0,0 +1,150 @@
+package com.melihyarikkaya.rnserialport;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+
+import com.felhr.usbserial.CDCSerialDevice;
+import com.felhr.usbserial.SerialInputStream;
+import com.felhr.usbserial.UsbSerialDevice;
+
+import java.util.Arrays;
+
+import static com.melihyarikkaya.rnserialport.SerialPortDefaultSettings.READ_CHUNK_SIZE;
+
+/**
+ * SerialTransport over felhr's synchronous UsbSerialDevice API.
+ */
+public class UsbSerialTransport implements SerialTransport
+{
+    private final UsbDevice device;
+    private final UsbDeviceConnection connection;
+    private final UsbSerialDevice serialPort;
+    // the interface the port was opened on, null if the device does not have it
+    private final UsbInterface portInterface;
+    private SerialInputStream inputStream;
+
+    /**
+     * @param portInterface interface index the serial device was created with, -1 for the driver's default
+     */
+    public UsbSerialTransport(UsbDevice device, UsbDeviceConnection connection, UsbSerialDevice serialPort,
+                              int portInterface)
+    {
+        this.device = device;
+        this.connection = connection;
+        this.serialPort = serialPort;
+        this.portInterface = findPortInterface(device, serialPort, portInterface);
+    }
+
+    @Override
+    public boolean open()
+    {
+        if (!serialPort.syncOpen())
+        {
+            return false;
+        }
+        inputStream = serialPort.getInputStream();
+        return true;
+    }
+
+    @Override
+    public int read(byte[] buffer)
+    {
+        return inputStream.read(buffer);
+    }
+
+    @Override
+    public int write(byte[] data, int length, int timeoutMillis)
+    {
+        byte[] transfer = length == data.length ? data : Arrays.copyOf(data, length);
+        return serialPort.syncWrite(transfer, timeoutMillis);
+    }
+
+    @Override
+    public void configure(SerialPortSettings settings)
+    {
+        settings.applyTo(serialPort);
+    }
+
+    @Override
+    public void setBaudRate(int baudRate)
+    {
+        serialPort.setBaudRate(baudRate);
+    }
+
+    @Override
+    public int getReadPacketSize()
+    {
+        return getBulkPacketSize(UsbConstants.USB_DIR_IN);
+    }
+
+    @Override
+    public int getWritePacketSize()
+    {
+        return getBulkPacketSize(UsbConstants.USB_DIR_OUT);
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            serialPort.syncClose();
+        }
+        catch (Exception e)
+        {
+            SerialLog.w("UsbSerialTransport: " + device.getDeviceName() + " close failed", e);
+        }
+        try
+        {
+            connection.close();
+        }
+        catch (Exception e)
+        {
+            SerialLog.w("UsbSerialTransport: " + device.getDeviceName() + " close failed", e);
+        }
+    }
+
+    // on multi-port chips every port has its own endpoints, so only the port's interface is looked at
+    private int getBulkPacketSize(int direction)
+    {
+        if (portInterface == null)
+        {
+            return READ_CHUNK_SIZE;
+        }
+        for (int i = 0; i < portInterface.getEndpointCount(); i++)
+        {
+            UsbEndpoint endpoint = portInterface.getEndpoint(i);
+            if (endpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK
+                    && endpoint.getDirection() == direction
+                    && endpoint.getMaxPacketSize() > 0)
+            {
+                return endpoint.getMaxPacketSize();
+            }
+        }
+        return READ_CHUNK_SIZE;
+    }
+
+    /**
+     * Picks the interface the way felhr's drivers do: the given index, or with -1 the first
+     * CDC data interface for CDC devices and interface 0 for the others.
+     */
+    private static UsbInterface findPortInterface(UsbDevice device, UsbSerialDevice serialPort, int index)
+    {
+        if (index < 0 && serialPort instanceof CDCSerialDevice)
+        {
+            for (int i = 0; i < device.getInterfaceCount(); i++)
+            {
+                if (device.getInterface(i).getInterfaceClass() == UsbConstants.USB_CLASS_CDC_DATA)
+                {
+                    return device.getInterface(i);
+                }
+            }
+            return null;
+        }
+        int interfaceIndex = Math.max(0, index);
+        return interfaceIndex < device.getInterfaceCount() ? device.getInterface(interfaceIndex) : null;
+    }
+}
@@ -0,0 +1,91 @@
+package com.melihyarikkaya.rnserialport;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the outcome of writes to several connections and resolves one promise with a result
+ * per write, in request order, once all of them have completed or failed.
+ * Write callbacks may arrive on any write reactor thread.
+ */
+public class WriteBatch
+{
+    private final int[] handles;
+    private final Promise promise;
+    private final int[] bytesWritten;
+    private final int[] errorCodes;
+    private final String[] errorMessages;
+    private final AtomicInteger remaining;
+
+    public WriteBatch(int[] handles, Promise promise)
+    {
+        this.handles = handles;
+        this.promise = promise;
+        this.bytesWritten = new int[handles.length];
+        this.errorCodes = new int[handles.length];
+        this.errorMessages = new String[handles.length];
+        this.remaining = new AtomicInteger(handles.length);
+        if (handles.length == 0)
+        {
+            promise.resolve(Arguments.createArray());
+        }
+    }
+
+    public SerialWriter.WriteCallback callback(final int index)
+    {
+        return new SerialWriter.WriteCallback()
+        {
+            @Override
+            public void onWritten(int count)
+            {
+                bytesWritten[index] = count;
+                complete();
+            }
+
+            @Override
+            public void onFailed(int errorCode, String errorMessage)
+            {
+                fail(index, errorCode, errorMessage);
+            }
+        };
+    }
+
+    public void fail(int index, int errorCode, String errorMessage)
+    {
+        errorCodes[index] = errorCode;
+        errorMessages[index] = errorMessage;
+        complete();
+    }
+
+    // the last decrement sees every result written before the others
+    private void complete()
+    {
+        if (remaining.decrementAndGet() != 0)
+        {
+            return;
+        }
+        WritableArray results = Arguments.createArray();
+        for (int i = 0; i < handles.length; i++)
+        {
+            WritableMap result = Arguments.createMap();
+            result.putInt("handle", handles[i]);
+            if (errorMessages[i] == null)
+            {
+                result.putBoolean("status", true);
+                result.putInt("bytesWritten", bytesWritten[i]);
+            }
+            else
+            {
+                result.putBoolean("status", false);
+                result.putInt("errorCode", errorCodes[i]);
+                result.putString("errorMessage", errorMessages[i]);
+            }
+            results.pushMap(result);
+        }
+        promise.resolve(results);
+    }
+}
@@ -0,0 +1,190 @@
+package com.melihyarikkaya.rnserialport;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The overloads taking caller-supplied buffers are what the read path runs per chunk,
+ * so once warmed up a loop over them must not allocate at all. The same goes for the
+ * per-byte publish loop while its log line is disabled.
+ */
+public class CallerBufferAllocationTest
+{
+    private static final int WARM_UP_ROUNDS = 20000;
+    private static final int ROUNDS = 20000;
+    private static final int MAX_CHUNK_LENGTH = 512;
+
+    private final SerialBuffer buffer = new SerialBuffer(4096);
+    private final byte[] source = new byte[MAX_CHUNK_LENGTH];
+    private final byte[] drained = new byte[MAX_CHUNK_LENGTH];
+    private final byte[] decoded = new byte[MAX_CHUNK_LENGTH];
+    private final char[] chars = new char[SerialCodec.hexEncodedLength(MAX_CHUNK_LENGTH)];
+    private final CharBuffer charView = CharBuffer.wrap(chars);
+    private final int[] lengths = new int[ROUNDS];
+
+    private com.sun.management.ThreadMXBean threads;
+    private long countingFrom;
+    private long countingOverhead;
+
+    @Before
+    public void setUp()
+    {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Random random = new Random(1);
+        random.nextBytes(source);
+        for (int i = 0; i < lengths.length; i++)
+        {
+            lengths[i] = 1 + random.nextInt(MAX_CHUNK_LENGTH);
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        SerialLog.setLevel(SerialLog.LEVEL_INFO, 1);
+    }
+
+    @Test
+    public void roundTripsDoNotAllocate()
+    {
+        assertEquals(0, runRoundTrips(WARM_UP_ROUNDS));
+
+        startCounting();
+        int mismatches = runRoundTrips(ROUNDS);
+        long allocated = stopCounting();
+
+        assertEquals(0, mismatches);
+        assertEquals("bytes allocated by " + ROUNDS + " round trips", 0, allocated);
+    }
+
+    /**
+     * At the default level and with logging off, the gated SerialLog.v() call site costs nothing.
+     */
+    @Test
+    public void perBytePublishDoesNotAllocateWhileVerboseIsOff()
+    {
+        for (String level : new String[] {SerialLog.LEVEL_INFO, SerialLog.LEVEL_NONE})
+        {
+            SerialLog.setLevel(level, 1);
+            assertEquals(0, publishEachByte(WARM_UP_ROUNDS));
+
+            startCounting();
+            int mismatches = publishEachByte(ROUNDS);
+            long allocated = stopCounting();
+
+            assertEquals(0, mismatches);
+            assertEquals("bytes allocated publishing " + ROUNDS + " chunks byte by byte at level " + level,
+                    0, allocated);
+        }
+    }
+
+    private void startCounting()
+    {
+        long threadId = Thread.currentThread().getId();
+        // reading the counter may allocate by itself
+        long first = threads.getThreadAllocatedBytes(threadId);
+        countingFrom = threads.getThreadAllocatedBytes(threadId);
+        countingOverhead = countingFrom - first;
+    }
+
+    private long stopCounting()
+    {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - countingFrom - countingOverhead;
+    }
+
+    /**
+     * ReadThread's per-byte read mode: every byte is added on its own, and the log line
+     * for it is only built when verbose logging is on and the byte is sampled.
+     *
+     * @return number of chunks that did not drain back unchanged
+     */
+    private int publishEachByte(int rounds)
+    {
+        int mismatches = 0;
+        for (int round = 0; round < rounds; round++)
+        {
+            int length = lengths[round % lengths.length];
+            int offset = round % (MAX_CHUNK_LENGTH - length + 1);
+
+            for (int i = offset; i < offset + length; i++)
+            {
+                buffer.add(source, i, 1, round);
+                if (SerialLog.isVerboseEnabled() && SerialLog.sample())
+                {
+                    SerialLog.v("read" + ":" + (source[i] & 0xFF));
+                }
+            }
+            int drainedLength = 0;
+            while (drainedLength < length)
+            {
+                drainedLength += buffer.drainChunk(decoded, drainedLength, length - drainedLength);
+            }
+            if (!sameBytes(source, offset, length))
+            {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Passes chunks through the ring buffer, then hex and base64 and back.
+     *
+     * @return number of chunks that did not come back unchanged
+     */
+    private int runRoundTrips(int rounds)
+    {
+        int mismatches = 0;
+        for (int round = 0; round < rounds; round++)
+        {
+            int length = lengths[round % lengths.length];
+            int offset = round % (MAX_CHUNK_LENGTH - length + 1);
+
+            buffer.add(source, offset, length, round);
+            int drainedLength = 0;
+            while (drainedLength < length)
+            {
+                drainedLength += buffer.drainChunk(drained, drainedLength, length - drainedLength);
+            }
+
+            charView.clear();
+            charView.limit(SerialCodec.hexEncode(drained, 0, length, chars, 0));
+            if (SerialCodec.hexDecode(charView, decoded, 0) != length || !sameBytes(source, offset, length))
+            {
+                mismatches++;
+            }
+
+            charView.clear();
+            charView.limit(SerialCodec.base64Encode(drained, 0, length, chars, 0));
+            if (SerialCodec.base64Decode(charView, decoded, 0) != length || !sameBytes(source, offset, length))
+            {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    private boolean sameBytes(byte[] expected, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            if (decoded[i] != expected[offset + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
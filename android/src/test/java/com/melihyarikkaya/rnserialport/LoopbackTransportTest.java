@@ -0,0 +1,184 @@
+package com.melihyarikkaya.rnserialport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The simulated link the load tests and openLoopback rely on: pacing, latency, bursts and link loss.
+ * Timing checks only bound from below, plus a generous upper limit, so a slow machine cannot fail them.
+ */
+public class LoopbackTransportTest
+{
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final long SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void echoesWrittenBytes()
+    {
+        LoopbackTransport transport = new LoopbackTransport(1);
+        transport.setBaudRate(0);
+        byte[] data = {1, 2, 3, 4, 5};
+
+        assertEquals(data.length, transport.write(data, data.length, 0));
+        assertArrayEquals(data, readFully(transport, data.length));
+    }
+
+    /**
+     * 10 bits per byte: 480 bytes at 9600 baud take half a second on the line.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void readsArePacedAtTheBaudRate()
+    {
+        LoopbackTransport transport = new LoopbackTransport(1);
+        transport.setBaudRate(9600);
+        long expectedNanos = TimeUnit.MILLISECONDS.toNanos(500);
+
+        long start = System.nanoTime();
+        transport.inject(new byte[480], 0, 480);
+        readFully(transport, 480);
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue("read in " + elapsed + " ns", elapsed >= expectedNanos);
+        assertTrue("read in " + elapsed + " ns", elapsed < expectedNanos + SLACK_NANOS);
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void latencyDelaysTheFirstByte()
+    {
+        LoopbackTransport transport = new LoopbackTransport(1);
+        transport.setBaudRate(0);
+        transport.setLatencyMillis(200);
+        long expectedNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+        long start = System.nanoTime();
+        transport.inject(new byte[] {42}, 0, 1);
+        byte[] read = readFully(transport, 1);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(42, read[0]);
+        assertTrue("read in " + elapsed + " ns", elapsed >= expectedNanos);
+        assertTrue("read in " + elapsed + " ns", elapsed < expectedNanos + SLACK_NANOS);
+    }
+
+    /**
+     * Burst sizes come from the seeded random, so a seed replays the same read pattern.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void burstsRepeatForTheSameSeed()
+    {
+        List<Integer> first = readBursts(7);
+        List<Integer> second = readBursts(7);
+        List<Integer> other = readBursts(8);
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+        int total = 0;
+        for (int size : first)
+        {
+            assertTrue("burst of " + size, size >= 1 && size <= 10);
+            total += size;
+        }
+        assertEquals(1000, total);
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void burstGapsSpaceTheReads()
+    {
+        LoopbackTransport transport = new LoopbackTransport(1);
+        transport.setBaudRate(0);
+        transport.setBursts(1, 20);
+        transport.inject(new byte[50], 0, 50);
+
+        long start = System.nanoTime();
+        readFully(transport, 50);
+        long elapsed = System.nanoTime() - start;
+
+        // 49 pauses of up to 20 ms each, about 10 ms on average
+        assertTrue("read in " + elapsed + " ns", elapsed > TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue("read in " + elapsed + " ns", elapsed < TimeUnit.MILLISECONDS.toNanos(980) + SLACK_NANOS);
+    }
+
+    /**
+     * A dropped link stays down: reads and writes fail from then on, like an unplugged device.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void droppedLinkStaysClosed()
+    {
+        LoopbackTransport transport = new LoopbackTransport(1);
+        transport.setBaudRate(0);
+        transport.inject(new byte[] {1, 2, 3}, 0, 3);
+        transport.setDisconnectProbability(1);
+
+        assertEquals(-1, transport.read(new byte[LoopbackTransport.PACKET_SIZE]));
+
+        transport.setDisconnectProbability(0);
+        assertEquals(-1, transport.read(new byte[LoopbackTransport.PACKET_SIZE]));
+        assertEquals(-1, transport.write(new byte[] {4}, 1, 0));
+        assertFalse(transport.open());
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void closeWakesABlockedReader() throws Exception
+    {
+        final LoopbackTransport transport = new LoopbackTransport(1);
+        final AtomicInteger result = new AtomicInteger(0);
+        Thread reader = new Thread("LoopbackTransportTest-reader")
+        {
+            @Override
+            public void run()
+            {
+                result.set(transport.read(new byte[LoopbackTransport.PACKET_SIZE]));
+            }
+        };
+        reader.start();
+        Thread.sleep(100);
+
+        transport.close();
+        reader.join();
+        assertEquals(-1, result.get());
+    }
+
+    private static List<Integer> readBursts(long seed)
+    {
+        LoopbackTransport transport = new LoopbackTransport(seed);
+        transport.setBaudRate(0);
+        transport.setBursts(10, 0);
+        transport.inject(new byte[1000], 0, 1000);
+
+        List<Integer> sizes = new ArrayList<>();
+        byte[] buffer = new byte[LoopbackTransport.PACKET_SIZE];
+        int total = 0;
+        while (total < 1000)
+        {
+            int size = transport.read(buffer);
+            sizes.add(size);
+            total += size;
+        }
+        return sizes;
+    }
+
+    private static byte[] readFully(LoopbackTransport transport, int length)
+    {
+        byte[] result = new byte[length];
+        byte[] buffer = new byte[LoopbackTransport.PACKET_SIZE];
+        int offset = 0;
+        while (offset < length)
+        {
+            int size = transport.read(buffer);
+            assertTrue("link dropped", size >= 0);
+            System.arraycopy(buffer, 0, result, offset, Math.min(size, length - offset));
+            offset += size;
+        }
+        return result;
+    }
+}
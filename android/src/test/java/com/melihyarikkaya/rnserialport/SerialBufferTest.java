@@ -0,0 +1,164 @@
+package com.melihyarikkaya.rnserialport;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs a producer and a consumer thread against one buffer, the way ReadThread and FrameTask use it.
+ * Each add() is stamped with its own sequence number, so the consumer can tell from the byte positions
+ * which add every drained byte came from.
+ */
+public class SerialBufferTest
+{
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    /**
+     * A small ring wraps around thousands of times, and adds larger than the ring only fit in parts.
+     * The stamp ring can never fill, so every chunk must carry exactly the stamp of its add.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void wrapAroundKeepsBytesAndStampsExact() throws Exception
+    {
+        Result result = run(new SerialBuffer(256), 2000000, 300, 97, 0);
+        assertEquals(0, result.inexactChunks);
+    }
+
+    /**
+     * Tiny adds into a large ring with a consumer that starts late fill the stamp ring;
+     * bytes added meanwhile must be reported with an earlier stamp, never a later one.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void fullStampRingReportsEarlierStamps() throws Exception
+    {
+        Result result = run(new SerialBuffer(), 500000, 2, 4096, 3000);
+        assertTrue("stamp ring never filled", result.inexactChunks > 0);
+    }
+
+    /**
+     * @param maxAddLength adds are 1 to maxAddLength bytes long
+     * @param drainLength size of the consumer's array
+     * @param consumerDelay adds the producer completes before the consumer starts draining
+     */
+    private static Result run(final SerialBuffer buffer, final int total, final int maxAddLength,
+                              int drainLength, long consumerDelay) throws Exception
+    {
+        // stamp of the add each position was written by, published together with the bytes
+        final long[] stamps = new long[total];
+        final AtomicLong adds = new AtomicLong(0);
+        final AtomicReference<Throwable> producerError = new AtomicReference<>();
+
+        Thread producer = new Thread("SerialBufferTest-producer")
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Random random = new Random(total);
+                    byte[] chunk = new byte[maxAddLength];
+                    int position = 0;
+                    long stamp = 0;
+                    while (position < total)
+                    {
+                        int length = Math.min(1 + random.nextInt(maxAddLength), total - position);
+                        stamp++;
+                        for (int i = 0; i < length; i++)
+                        {
+                            chunk[i] = valueAt(position + i);
+                            stamps[position + i] = stamp;
+                        }
+                        // retries while full keep the receive time, like ReadThread does;
+                        // only yielding keeps the producer right behind the consumer's read position
+                        int offset = buffer.add(chunk, 0, length, stamp);
+                        while (offset < length)
+                        {
+                            Thread.yield();
+                            offset += buffer.add(chunk, offset, length - offset, stamp);
+                        }
+                        position += length;
+                        adds.lazySet(stamp);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    producerError.set(e);
+                }
+            }
+        };
+        producer.start();
+
+        while (adds.get() < consumerDelay)
+        {
+            Thread.yield();
+        }
+
+        Result result = new Result();
+        byte[] destination = new byte[drainLength + 3];
+        int position = 0;
+        long lastStamp = 0;
+        while (position < total)
+        {
+            if (producerError.get() != null)
+            {
+                throw new AssertionError(producerError.get());
+            }
+            int length = buffer.drainChunk(destination, 3, drainLength);
+            if (length == 0)
+            {
+                Thread.yield();
+                continue;
+            }
+            long stamp = buffer.getDrainedTimestamp();
+            if (stamp < lastStamp)
+            {
+                fail("stamp went back from " + lastStamp + " to " + stamp + " at position " + position);
+            }
+            lastStamp = stamp;
+            boolean exact = true;
+            for (int i = 0; i < length; i++)
+            {
+                if (destination[3 + i] != valueAt(position + i))
+                {
+                    fail("wrong byte at position " + (position + i));
+                }
+                if (stamps[position + i] < stamp)
+                {
+                    fail("position " + (position + i) + " added at " + stamps[position + i]
+                            + " but drained with the later stamp " + stamp);
+                }
+                exact &= stamps[position + i] == stamp;
+            }
+            if (!exact)
+            {
+                result.inexactChunks++;
+            }
+            position += length;
+        }
+        producer.join();
+        if (producerError.get() != null)
+        {
+            throw new AssertionError(producerError.get());
+        }
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.drainChunk(destination, 0, drainLength));
+        return result;
+    }
+
+    // not periodic in the ring size, so a lost or repeated lap shows up as a wrong byte
+    private static byte valueAt(int position)
+    {
+        return (byte) (position * 7 + (position >>> 8) + (position >>> 16));
+    }
+
+    private static class Result
+    {
+        int inexactChunks;
+    }
+}
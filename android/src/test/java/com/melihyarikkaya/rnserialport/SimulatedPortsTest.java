@@ -0,0 +1,307 @@
+package com.melihyarikkaya.rnserialport;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives many echoing LoopbackTransports through the same pipeline SerialConnection builds:
+ * a reader thread per port into a SerialBuffer, a DelimiterFrameDecoder on a strand of the shared reactor
+ * and a SerialWriter on a strand of the write reactor. Every port writes a numbered line every 5 ms,
+ * and the time from write() to the decoded frame is its latency.
+ * Prints threads, CPU and latency per port count, so thread scaling can be compared between changes.
+ */
+public class SimulatedPortsTest
+{
+    private static final long TIMEOUT_MILLIS = 60000;
+    private static final long RUN_MILLIS = 2000;
+    private static final long WRITE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int BAUD_RATE = 115200;
+    private static final int MAX_FRAMES = (int) (2 * RUN_MILLIS * 1000000 / WRITE_INTERVAL_NANOS);
+    private static final byte[] DELIMITER = {'\n'};
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Only the readers grow with the port count; framing and writes share the two fixed pools.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void threadsGrowByOnePerPort() throws Exception
+    {
+        System.out.println("ports  threads  cpu      p50       p99");
+        for (int portCount : new int[] {1, 8, 32})
+        {
+            Result result = run(portCount);
+            System.out.printf("%5d  %7d  %5.1f%%  %6dus  %6dus%n", portCount, result.threads,
+                    result.cpuPercent, result.p50Micros, result.p99Micros);
+            assertEquals(portCount + result.poolThreads, result.threads);
+            assertEquals(result.framesSent, result.framesReceived);
+        }
+    }
+
+    private Result run(int portCount) throws Exception
+    {
+        int baseline = threads.getThreadCount();
+        SerialReactor reactor = new SerialReactor();
+        SerialReactor writeReactor = new SerialReactor(SerialPortDefaultSettings.WRITE_THREADS);
+        List<Port> ports = new ArrayList<>();
+        for (int i = 0; i < portCount; i++)
+        {
+            ports.add(new Port(i, reactor, writeReactor));
+        }
+
+        long cpuBefore = getProcessCpuNanos();
+        long startNanos = System.nanoTime();
+        for (Port port : ports)
+        {
+            port.start();
+        }
+        Thread.sleep(RUN_MILLIS / 2);
+        int peakThreads = threads.getThreadCount() - baseline;
+        Thread.sleep(RUN_MILLIS / 2);
+        for (Port port : ports)
+        {
+            port.stopWriting();
+        }
+        for (Port port : ports)
+        {
+            port.awaitFrames();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long cpuNanos = getProcessCpuNanos() - cpuBefore;
+
+        Result result = new Result();
+        List<Long> latencies = new ArrayList<>();
+        for (Port port : ports)
+        {
+            port.close();
+            result.framesSent += port.sent.get();
+            result.framesReceived += port.received;
+            assertEquals(0, port.outOfOrder);
+            for (int i = 0; i < port.received; i++)
+            {
+                latencies.add(port.latencies[i]);
+            }
+        }
+        writeReactor.shutdown(SerialPortDefaultSettings.SHUTDOWN_TIMEOUT);
+        reactor.shutdown(SerialPortDefaultSettings.SHUTDOWN_TIMEOUT);
+        awaitThreadCount(baseline);
+
+        long[] sorted = new long[latencies.size()];
+        for (int i = 0; i < sorted.length; i++)
+        {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        assertTrue("no frames", sorted.length > 0);
+        result.threads = peakThreads;
+        result.poolThreads = reactor.getThreadCount() + writeReactor.getThreadCount();
+        result.cpuPercent = cpuNanos < 0 ? -1 : 100.0 * cpuNanos / elapsedNanos;
+        result.p50Micros = sorted[sorted.length / 2] / 1000;
+        result.p99Micros = sorted[(int) (sorted.length * 0.99)] / 1000;
+        return result;
+    }
+
+    private void awaitThreadCount(int count) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (threads.getThreadCount() > count && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    private static long getProcessCpuNanos()
+    {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+        {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * One simulated device with the reader, framing and writer of a SerialConnection.
+     */
+    private static class Port implements FrameDecoder.FrameListener
+    {
+        final LoopbackTransport transport;
+        final SerialBuffer buffer = new SerialBuffer();
+        final SerialWriter writer;
+        final SerialReactor.Strand frameStrand;
+        final SerialReactor.Strand sendStrand;
+        final FrameDecoder decoder = new DelimiterFrameDecoder(DELIMITER, true);
+        final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+        final AtomicLongArray sentNanos = new AtomicLongArray(MAX_FRAMES);
+        final AtomicInteger sent = new AtomicInteger(0);
+        final Thread reader;
+        ScheduledFuture<?> sendTimer;
+
+        // framing strand only
+        final byte[] drainBuffer = new byte[LoopbackTransport.PACKET_SIZE];
+        final long[] latencies = new long[MAX_FRAMES];
+        volatile int received = 0;
+        int outOfOrder = 0;
+
+        Port(int index, SerialReactor reactor, SerialReactor writeReactor)
+        {
+            transport = new LoopbackTransport(index);
+            transport.setBaudRate(BAUD_RATE);
+            transport.open();
+            frameStrand = reactor.newStrand();
+            sendStrand = reactor.newStrand();
+            writer = new SerialWriter(transport, transport.getWritePacketSize(),
+                    SerialPortDefaultSettings.WRITE_QUEUE_SIZE, SerialPortDefaultSettings.WRITE_TIMEOUT,
+                    writeReactor.newStrand(), new SerialConnectionStats());
+            reader = new Thread("SimulatedPort-" + index)
+            {
+                @Override
+                public void run()
+                {
+                    byte[] chunk = new byte[transport.getReadPacketSize()];
+                    int length;
+                    while ((length = transport.read(chunk)) >= 0)
+                    {
+                        int offset = buffer.add(chunk, 0, length, System.nanoTime());
+                        while (offset < length)
+                        {
+                            scheduleFraming();
+                            Thread.yield();
+                            offset += buffer.add(chunk, offset, length - offset, System.nanoTime());
+                        }
+                        scheduleFraming();
+                    }
+                }
+            };
+        }
+
+        void start()
+        {
+            reader.start();
+            sendTimer = sendStrand.scheduleAtFixedRate(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    int sequence = sent.get();
+                    if (sequence == MAX_FRAMES)
+                    {
+                        return;
+                    }
+                    byte[] line = (sequence + "\n").getBytes();
+                    sentNanos.set(sequence, System.nanoTime());
+                    sent.incrementAndGet();
+                    writer.write(line, null);
+                }
+            }, WRITE_INTERVAL_NANOS);
+        }
+
+        void stopWriting()
+        {
+            sendTimer.cancel(false);
+            // the last tick may still be running on the strand
+            final Object done = new Object();
+            synchronized (done)
+            {
+                sendStrand.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        synchronized (done)
+                        {
+                            done.notifyAll();
+                        }
+                    }
+                });
+                try
+                {
+                    done.wait(SerialPortDefaultSettings.SHUTDOWN_TIMEOUT);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        void awaitFrames() throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received < sent.get() && System.nanoTime() < deadline)
+            {
+                Thread.sleep(5);
+            }
+        }
+
+        void close() throws InterruptedException
+        {
+            writer.close();
+            transport.close();
+            reader.join();
+        }
+
+        private void scheduleFraming()
+        {
+            if (frameScheduled.compareAndSet(false, true))
+            {
+                frameStrand.execute(frameTask);
+            }
+        }
+
+        private final Runnable frameTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                frameScheduled.set(false);
+                int length;
+                while ((length = buffer.drainChunk(drainBuffer, 0, drainBuffer.length)) > 0)
+                {
+                    decoder.decode(drainBuffer, 0, length, Port.this);
+                }
+            }
+        };
+
+        @Override
+        public void onFrame(byte[] frame, int offset, int length)
+        {
+            long now = System.nanoTime();
+            int sequence = 0;
+            for (int i = offset; i < offset + length; i++)
+            {
+                sequence = sequence * 10 + frame[i] - '0';
+            }
+            if (sequence != received)
+            {
+                outOfOrder++;
+            }
+            latencies[received] = now - sentNanos.get(sequence);
+            received++;
+        }
+    }
+
+    private static class Result
+    {
+        int threads;
+        int poolThreads;
+        double cpuPercent;
+        long p50Micros;
+        long p99Micros;
+        long framesSent;
+        long framesReceived;
+    }
+}
@@ -29,7 +29,65 @@ const definitions = {
   },
   RETURNED_DATA_TYPES: {
     INTARRAY : 1,
-    HEXSTRING: 2
+    HEXSTRING: 2,
+    BASE64   : 3,
+    TEXT     : 4
+  },
+  READ_MODES: {
+    BYTE: 1,
+    BULK: 2
+  },
+  LOG_LEVELS: {
+    VERBOSE: "verbose",
+    DEBUG  : "debug",
+    INFO   : "info",
+    WARN   : "warn",
+    ERROR  : "error",
+    NONE   : "none"
+  },
+  TIME_UNITS: {
+    MILLISECONDS: "ms",
+    MICROSECONDS: "us"
+  },
+  OVERFLOW_POLICIES: {
+    DROP_OLDEST: "dropOldest",
+    DROP_NEWEST: "dropNewest"
+  },
+  CHARSETS: {
+    UTF8      : "UTF-8",
+    ASCII     : "US-ASCII",
+    ISO_8859_1: "ISO-8859-1"
+  },
+  BUFFER_OVERFLOW_POLICIES: {
+    FLUSH_EARLY  : "flushEarly",
+    DROP_OLDEST  : "dropOldest",
+    DROP_NEWEST  : "dropNewest",
+    PAUSE_READING: "pauseReading"
+  },
+  FRAME_DECODER_TYPES: {
+    IDLE_GAP       : "idleGap",
+    DELIMITER      : "delimiter",
+    FIXED_LENGTH   : "fixedLength",
+    LENGTH_PREFIXED: "lengthPrefixed"
+  },
+  FIELD_TYPES: {
+    INT8   : "int8",
+    UINT8  : "uint8",
+    INT16  : "int16",
+    UINT16 : "uint16",
+    INT32  : "int32",
+    UINT32 : "uint32",
+    FLOAT32: "float32"
+  },
+  MODBUS_FUNCTIONS: {
+    READ_COILS              : 0x01,
+    READ_DISCRETE_INPUTS    : 0x02,
+    READ_HOLDING_REGISTERS  : 0x03,
+    READ_INPUT_REGISTERS    : 0x04,
+    WRITE_SINGLE_COIL       : 0x05,
+    WRITE_SINGLE_REGISTER   : 0x06,
+    WRITE_MULTIPLE_COILS    : 0x0F,
+    WRITE_MULTIPLE_REGISTERS: 0x10
   },
   DRIVER_TYPES: {
     AUTO    : "AUTO",
@@ -49,23 +107,73 @@ const actions = {
   ON_ERROR                : 'onError',
   ON_CONNECTED            : 'onConnected',
   ON_DISCONNECTED         : 'onDisconnected',
-  ON_READ_DATA            : 'onReadDataFromPort'
+  ON_READ_DATA            : 'onReadDataFromPort',
+  ON_READ_DATA_BATCH      : 'onReadDataBatch',
+  ON_STATS                : 'onStats',
+  ON_POLL_DATA            : 'onPollData',
+  ON_FRAME_AGGREGATE      : 'onFrameAggregate',
+  ON_REPLAY_FINISHED      : 'onReplayFinished',
+  ON_BUFFER_OVERFLOW      : 'onBufferOverflow'
 };
 
-RNSerialport.intArrayToUtf16 = (intArray) => {
-  var str = "";
-  for (var i = 0; i < intArray.length; i++) {
-    str += String.fromCharCode(intArray[i]);
+const CHUNK_SIZE = 4096;
+const BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+const BASE64_LOOKUP = {};
+for (var j = 0; j < BASE64_CHARS.length; j++) {
+  BASE64_LOOKUP[BASE64_CHARS.charAt(j)] = j;
+}
+
+const codesToString = (codes) => {
+  var parts = [];
+  for (var i = 0; i < codes.length; i += CHUNK_SIZE) {
+    parts.push(String.fromCharCode.apply(null, codes.slice(i, i + CHUNK_SIZE)));
   }
-  return str;
+  return parts.join("");
+}
+
+// the native method takes options since they were added; one-argument callers keep working
+const nativeConnectDevice = RNSerialport.connectDevice;
+RNSerialport.connectDevice = (deviceName, options) => {
+  return nativeConnectDevice(deviceName, options || {});
+}
+
+RNSerialport.intArrayToUtf16 = (intArray) => {
+  return codesToString(Array.prototype.slice.call(intArray));
 }
 RNSerialport.hexToUtf16 = (hex) => {
-  var str = "";
+  var codes = [];
   var radix = 16;
   for (var i = 0; i < hex.length && hex.substr(i, 2) !== "00"; i += 2) {
-    str += String.fromCharCode(parseInt(hex.substr(i, 2), radix));
+    codes.push(parseInt(hex.substr(i, 2), radix));
+  }
+  return codesToString(codes);
+}
+const base64Value = (base64, position) => {
+  var c = base64.charAt(position);
+  if (!BASE64_LOOKUP.hasOwnProperty(c)) {
+    throw new Error("Invalid base64 character '" + c + "' at position " + position);
+  }
+  return BASE64_LOOKUP[c];
+}
+
+RNSerialport.base64ToIntArray = (base64) => {
+  if (base64.length % 4 !== 0) {
+    throw new Error("Base64 string length must be a multiple of 4, got " + base64.length);
+  }
+  var padding = base64.endsWith("==") ? 2 : base64.endsWith("=") ? 1 : 0;
+  var firstPad = base64.length - padding;
+  var bytes = new Array(base64.length / 4 * 3 - padding);
+  var index = 0;
+  for (var i = 0; i < base64.length; i += 4) {
+    var n = (base64Value(base64, i) << 18)
+      | (base64Value(base64, i + 1) << 12)
+      | ((i + 2 >= firstPad ? 0 : base64Value(base64, i + 2)) << 6)
+      | (i + 3 >= firstPad ? 0 : base64Value(base64, i + 3));
+    bytes[index++] = (n >> 16) & 0xFF;
+    if (index < bytes.length) bytes[index++] = (n >> 8) & 0xFF;
+    if (index < bytes.length) bytes[index++] = n & 0xFF;
   }
-  return str;
+  return bytes;
 }
 
 module.exports = { RNSerialport, definitions, actions };
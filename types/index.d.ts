@@ -6,8 +6,36 @@ export interface IDevice {
 
 export type Devices = Array<IDevice> | null;
 
+export interface ITextOptions {
+  charset?: string;
+  lineTerminator?: string;
+}
+/** errorCode/errorMessage are set when status is false */
+export interface IWriteResult {
+  handle: number;
+  status: boolean;
+  bytesWritten?: number;
+  errorCode?: number;
+  errorMessage?: string;
+}
+export interface IWriteBatchEntry {
+  handle: number;
+  payload: string;
+  payloadEncoding?: "hex" | "base64" | "string";
+}
+
+/**
+ * Set on onReadDataFromPort: firstByteNanos/lastByteNanos are monotonic receive
+ * times in ns since an anchor shared by all devices; wall time is
+ * anchorEpochMillis + nanos / 1e6
+ */
 export interface IOnReadData {
-  pyload: string | Array<number>
+  deviceName: string;
+  dataType: ReturnedDataTypes;
+  data: string | Array<number>;
+  firstByteNanos?: number;
+  lastByteNanos?: number;
+  anchorEpochMillis?: number;
 }
 export interface IOnError {
   status: boolean;
@@ -15,6 +43,176 @@ export interface IOnError {
   errorMessage: string;
   exceptionErrorMessage?: string;
 }
+export interface IConnectionOptions {
+  baudRate?: number;
+  dataBits?: DataBits;
+  stopBits?: StopBits;
+  parity?: Parities;
+  flowControl?: FlowControls;
+  interface?: number;
+  driver?: Drivers;
+  readChunkSize?: number;
+}
+/** Simulated link: latency and maxBurstGap in ms, disconnectProbability per read/write */
+export interface ILoopbackOptions extends IConnectionOptions {
+  latency?: number;
+  maxBurstSize?: number;
+  maxBurstGap?: number;
+  disconnectProbability?: number;
+  seed?: number;
+}
+/**
+ * files of one capture, in order; speed 1 is real time, 0 as fast as possible;
+ * autoClose closes the connection one frame timeout after onReplayFinished
+ */
+export interface IReplayOptions extends IConnectionOptions {
+  files: Array<string>;
+  speed?: number;
+  waitForWrites?: boolean;
+  autoClose?: boolean;
+}
+/** elapsed in ms, from opening to the last recorded chunk being read */
+export interface IOnReplayFinished {
+  deviceName: string;
+  bytes: number;
+  chunks: number;
+  elapsed: number;
+  bytesPerSecond: number;
+  mismatches: number;
+}
+/** counts since the previous onBufferOverflow event */
+export interface IOnBufferOverflow {
+  deviceName: string;
+  policy: "flushEarly" | "dropOldest" | "dropNewest" | "pauseReading";
+  overflows: number;
+  droppedBytes: number;
+}
+/** terminator/start take UTF-8 strings, terminatorHex/startHex hex strings; timeout in ms */
+export interface ITransactionOptions {
+  payloadEncoding?: "hex" | "base64" | "string";
+  responseLength?: number;
+  terminator?: string;
+  terminatorHex?: string;
+  start?: string;
+  startHex?: string;
+  timeout?: number;
+}
+/** quantity for reads, values (0/1 for coils) for writes; timeout in ms */
+export interface IModbusRequest {
+  slave: number;
+  function: number;
+  address: number;
+  quantity?: number;
+  values?: Array<number>;
+  timeout?: number;
+}
+/** Register values, coil states as 0/1, or the written values for write functions */
+export interface IModbusResponse {
+  slave: number;
+  function: number;
+  address: number;
+  values: Array<number>;
+}
+/** period in ms; changesOnly skips responses equal to the previous one */
+export interface IPollOptions extends ITransactionOptions {
+  period: number;
+  changesOnly?: boolean;
+}
+export interface IOnPollData extends IOnReadData {
+  pollId: number;
+}
+export interface IFrameDecoderOptions {
+  type: "idleGap" | "delimiter" | "fixedLength" | "lengthPrefixed";
+  delimiter?: string;
+  delimiterHex?: string;
+  stripDelimiter?: boolean;
+  frameLength?: number;
+  lengthOffset?: number;
+  lengthSize?: 1 | 2 | 4;
+  littleEndian?: boolean;
+  lengthAdjustment?: number;
+  maxFrameLength?: number;
+}
+/** Bytes at offset must equal prefix (UTF-8) or prefixHex where maskHex has bits set */
+export interface IFrameFilter {
+  prefix?: string;
+  prefixHex?: string;
+  maskHex?: string;
+  offset?: number;
+}
+export interface IAggregateField {
+  offset: number;
+  type?: "int8" | "uint8" | "int16" | "uint16" | "int32" | "uint32" | "float32";
+  littleEndian?: boolean;
+}
+/** A frame passes if it matches any filter; at most one of everyNth, latestInterval and aggregate. Times in ms */
+export interface IFrameProcessorOptions {
+  filters?: Array<IFrameFilter>;
+  everyNth?: number;
+  latestInterval?: number;
+  aggregate?: {
+    window: number;
+    fields: Array<IAggregateField>;
+  };
+}
+/** One entry per aggregate field, in the configured order */
+export interface IOnFrameAggregate {
+  deviceName: string;
+  count: number;
+  fields: Array<{ min: number; max: number; mean: number }>;
+}
+/** Sizes in bytes; directory defaults to <files dir>/serial-capture */
+export interface ICaptureOptions {
+  directory?: string;
+  maxFileSize?: number;
+  maxFiles?: number;
+  bufferSize?: number;
+}
+/** files still on disk, oldest first */
+export interface ICaptureResult {
+  files: Array<string>;
+  capturedBytes: number;
+  droppedBytes: number;
+}
+export interface IEventBatchingOptions {
+  enabled?: boolean;
+  maxBatchSize?: number;
+  maxDelay?: number;
+  maxEventsPerSecond?: number;
+  maxQueueSize?: number;
+  overflowPolicy?: "dropOldest" | "dropNewest";
+}
+export interface IEventBatchingStats {
+  enabled: boolean;
+  queued: number;
+  dropped: number;
+  emitted: number;
+  batches: number;
+}
+/** Latencies in microseconds; percentiles are power-of-two bucket upper bounds */
+export interface ILatencyHistogram {
+  count: number;
+  mean: number;
+  p50: number;
+  p90: number;
+  p99: number;
+  max: number;
+}
+export interface IConnectionStats {
+  deviceName: string;
+  bytesIn: number;
+  bytesOut: number;
+  framesIn: number;
+  framesOut: number;
+  droppedBytes: number;
+  droppedEvents: number;
+  failedWrites: number;
+  bufferHighWaterMark: number;
+  bufferOverflows: number;
+  writeQueueDepth: number;
+  emitLatency: ILatencyHistogram;
+  writeLatency: ILatencyHistogram;
+}
 export interface IOnServiceStarted {
   deviceAttached: boolean
 }
@@ -47,6 +245,64 @@ interface DefinitionsStatic {
   RETURNED_DATA_TYPES: {
     INTARRAY: number;
     HEXSTRING: number;
+    BASE64: number;
+    TEXT: number;
+  };
+  CHARSETS: {
+    UTF8: string;
+    ASCII: string;
+    ISO_8859_1: string;
+  };
+  READ_MODES: {
+    BYTE: number;
+    BULK: number;
+  };
+  LOG_LEVELS: {
+    VERBOSE: string;
+    DEBUG: string;
+    INFO: string;
+    WARN: string;
+    ERROR: string;
+    NONE: string;
+  };
+  TIME_UNITS: {
+    MILLISECONDS: string;
+    MICROSECONDS: string;
+  };
+  OVERFLOW_POLICIES: {
+    DROP_OLDEST: string;
+    DROP_NEWEST: string;
+  };
+  BUFFER_OVERFLOW_POLICIES: {
+    FLUSH_EARLY: string;
+    DROP_OLDEST: string;
+    DROP_NEWEST: string;
+    PAUSE_READING: string;
+  };
+  FRAME_DECODER_TYPES: {
+    IDLE_GAP: string;
+    DELIMITER: string;
+    FIXED_LENGTH: string;
+    LENGTH_PREFIXED: string;
+  };
+  FIELD_TYPES: {
+    INT8: string;
+    UINT8: string;
+    INT16: string;
+    UINT16: string;
+    INT32: string;
+    UINT32: string;
+    FLOAT32: string;
+  };
+  MODBUS_FUNCTIONS: {
+    READ_COILS: number;
+    READ_DISCRETE_INPUTS: number;
+    READ_HOLDING_REGISTERS: number;
+    READ_INPUT_REGISTERS: number;
+    WRITE_SINGLE_COIL: number;
+    WRITE_SINGLE_REGISTER: number;
+    WRITE_MULTIPLE_COILS: number;
+    WRITE_MULTIPLE_REGISTERS: number;
   };
   DRIVER_TYPES: {
     AUTO: string,
@@ -67,7 +323,13 @@ interface ActionsStatic {
   ON_ERROR: string,
   ON_CONNECTED: string,
   ON_DISCONNECTED: string,
-  ON_READ_DATA: string
+  ON_READ_DATA: string,
+  ON_READ_DATA_BATCH: string,
+  ON_STATS: string,
+  ON_POLL_DATA: string,
+  ON_FRAME_AGGREGATE: string,
+  ON_REPLAY_FINISHED: string,
+  ON_BUFFER_OVERFLOW: string
 }
 export var actions: ActionsStatic;
 
@@ -75,7 +337,8 @@ type DataBits = 5 | 6 | 7 | 8;
 type StopBits = 1 | 2 | 3;
 type Parities = 0 | 1 | 2 | 3 | 4;
 type FlowControls = 0 | 1 | 2 | 3;
-type ReturnedDataTypes = 1 | 2;
+type ReturnedDataTypes = 1 | 2 | 3 | 4;
+type ReadModes = 1 | 2;
 type Drivers = "AUTO" | "cdc" | "ch34x" | "cp210x" | "ftdi" | "pl2303";
 
 interface RNSerialportStatic {
@@ -120,12 +383,210 @@ interface RNSerialportStatic {
   //Begin setter methods
 
   /**
-   * Set the returned data type
+   * Set the returned data type of a connection
    *
+   * @param {string} deviceName
    * @param {ReturnedDataTypes} type
    * @memberof RNSerialportStatic
    */
-  setReturnedDataType(type: ReturnedDataTypes): void;
+  setReturnedDataType(deviceName: string, type: ReturnedDataTypes): void;
+
+  /**
+   * Set the read mode of a connection: one byte per read or
+   * whole USB packets per read (default)
+   *
+   * @param {string} deviceName
+   * @param {ReadModes} mode
+   * @memberof RNSerialportStatic
+   */
+  setReadMode(deviceName: string, mode: ReadModes): void;
+
+  /**
+   * Set how the incoming byte stream of a connection is split into
+   * onReadDataFromPort events
+   *
+   * @param {string} deviceName
+   * @param {IFrameDecoderOptions} options
+   * @memberof RNSerialportStatic
+   */
+  setFrameDecoder(deviceName: string, options: IFrameDecoderOptions): void;
+
+  /**
+   * Filter and thin out decoded frames natively before they are emitted.
+   * With aggregate, onFrameAggregate is emitted once per window instead of
+   * the frames. An empty options object emits every frame again
+   *
+   * @param {string} deviceName
+   * @param {IFrameProcessorOptions} options
+   * @memberof RNSerialportStatic
+   */
+  setFrameProcessor(deviceName: string, options: IFrameProcessorOptions): void;
+
+  /**
+   * Set the inter-byte timeout after which a partial frame is emitted
+   * (default 200 ms)
+   *
+   * @param {string} deviceName
+   * @param {number} timeout
+   * @param {"ms" | "us"} unit
+   * @memberof RNSerialportStatic
+   */
+  setFrameTimeout(deviceName: string, timeout: number, unit: "ms" | "us"): void;
+
+  /**
+   * Configure the TEXT returned data type: received bytes are decoded
+   * incrementally in charset (default UTF-8), so characters split across
+   * reads stay intact. With lineTerminator each complete line is emitted
+   * on its own, without the terminator
+   *
+   * @param {string} deviceName
+   * @param {ITextOptions} options
+   * @memberof RNSerialportStatic
+   */
+  setTextOptions(deviceName: string, options: ITextOptions): void;
+
+  /**
+   * Cap the bytes held for an unfinished frame (default 65536, flushEarly).
+   * flushEarly emits them as a frame, dropOldest and dropNewest drop the
+   * excess, pauseReading stops reading for one frame timeout and then emits
+   * them. Overflows are reported via onBufferOverflow
+   *
+   * @param {string} deviceName
+   * @param {number} limit bytes
+   * @param {"flushEarly" | "dropOldest" | "dropNewest" | "pauseReading"} policy
+   * @memberof RNSerialportStatic
+   */
+  setBufferLimit(deviceName: string, limit: number,
+                 policy: "flushEarly" | "dropOldest" | "dropNewest" | "pauseReading"): void;
+
+  /**
+   * Enable, configure or disable batching of read events. While enabled
+   * frames of all connections are delivered as arrays via onReadDataBatch
+   *
+   * @param {IEventBatchingOptions} options
+   * @memberof RNSerialportStatic
+   */
+  setEventBatching(options: IEventBatchingOptions): void;
+
+  /**
+   * Returns queue and drop counters of the event batching via Promise
+   *
+   * @returns {Promise<IEventBatchingStats>}
+   * @memberof RNSerialportStatic
+   */
+  getEventBatchingStats(): Promise<IEventBatchingStats>;
+
+  /**
+   * Counters and latency histograms of the connection
+   *
+   * @param {string} deviceName
+   * @returns {Promise<IConnectionStats>}
+   * @memberof RNSerialportStatic
+   */
+  getStats(deviceName: string): Promise<IConnectionStats>;
+
+  /**
+   * Emit onStats with an array of IConnectionStats every interval, 0 to stop
+   *
+   * @param {number} intervalMillis
+   * @memberof RNSerialportStatic
+   */
+  setStatsInterval(intervalMillis: number): void;
+
+  /**
+   * Write the payload and resolve with the device's response. The response
+   * ends after responseLength bytes, after the terminator, or after the
+   * frame timeout of silence. Transactions on one device run in order
+   *
+   * @param {string} deviceName
+   * @param {string} payload hex string unless options.payloadEncoding is set
+   * @param {ITransactionOptions} options
+   * @returns {Promise<IOnReadData>}
+   * @memberof RNSerialportStatic
+   */
+  transact(deviceName: string, payload: string, options: ITransactionOptions): Promise<IOnReadData>;
+
+  /**
+   * Send a Modbus RTU request and resolve with the decoded values. Requests
+   * are separated by 3.5 character times of silence and take turns between
+   * slaves. A Modbus exception rejects with its exception code in the message
+   *
+   * @param {string} deviceName
+   * @param {IModbusRequest} request
+   * @returns {Promise<IModbusResponse>}
+   * @memberof RNSerialportStatic
+   */
+  modbusRequest(deviceName: string, request: IModbusRequest): Promise<IModbusResponse>;
+
+  /**
+   * Send the payload natively every period and emit the responses as
+   * onPollData. Sends stay on a fixed grid and are skipped while the previous
+   * response is pending. Failures are emitted as onError with the pollId
+   *
+   * @param {string} deviceName
+   * @param {string} payload hex string unless options.payloadEncoding is set
+   * @param {IPollOptions} options
+   * @returns {Promise<number>} poll id
+   * @memberof RNSerialportStatic
+   */
+  startPolling(deviceName: string, payload: string, options: IPollOptions): Promise<number>;
+
+  /**
+   * Stop sending until resumePolling
+   *
+   * @param {string} deviceName
+   * @param {number} pollId
+   * @memberof RNSerialportStatic
+   */
+  pausePolling(deviceName: string, pollId: number): void;
+
+  /**
+   * Send at once and continue every period
+   *
+   * @param {string} deviceName
+   * @param {number} pollId
+   * @memberof RNSerialportStatic
+   */
+  resumePolling(deviceName: string, pollId: number): void;
+
+  /**
+   * Remove the poll. Polls also stop when the connection closes
+   *
+   * @param {string} deviceName
+   * @param {number} pollId
+   * @memberof RNSerialportStatic
+   */
+  stopPolling(deviceName: string, pollId: number): void;
+
+  /**
+   * Record every inbound and outbound chunk with its direction and
+   * nanosecond timestamp to rotating binary files. Replaces a running capture
+   *
+   * @param {string} deviceName
+   * @param {ICaptureOptions} options
+   * @returns {Promise<string>} path of the first capture file
+   * @memberof RNSerialportStatic
+   */
+  startCapture(deviceName: string, options: ICaptureOptions): Promise<string>;
+
+  /**
+   * Write out the buffered records and close the capture file
+   *
+   * @param {string} deviceName
+   * @returns {Promise<ICaptureResult>}
+   * @memberof RNSerialportStatic
+   */
+  stopCapture(deviceName: string): Promise<ICaptureResult>;
+
+  /**
+   * Set the native log level (default "info"). Per-byte ("verbose") and
+   * per-frame ("debug") messages are logged once every sampleRate events
+   *
+   * @param {"verbose" | "debug" | "info" | "warn" | "error" | "none"} level
+   * @param {number} sampleRate
+   * @memberof RNSerialportStatic
+   */
+  setLogLevel(level: "verbose" | "debug" | "info" | "warn" | "error" | "none", sampleRate: number): void;
 
   /**
    * Set the interface
@@ -209,13 +670,55 @@ interface RNSerialportStatic {
   getDeviceList(): Promise<Devices>;
 
   /**
-   * Connect to device with device name and baud rate
+   * Connect to device with device name and connection options. Options
+   * that are not given are taken from the default settings
+   *
+   * @param {string} deviceName
+   * @param {IConnectionOptions} options
+   * @memberof RNSerialportStatic
+   */
+  connectDevice(deviceName: string, options?: IConnectionOptions): void;
+
+  /**
+   * Open a simulated port under the given name. Written data is echoed
+   * back through the normal read pipeline, paced at options.baudRate
+   *
+   * @param {string} deviceName
+   * @param {ILoopbackOptions} options
+   * @memberof RNSerialportStatic
+   */
+  openLoopback(deviceName: string, options: ILoopbackOptions): void;
+
+  /**
+   * Open a port that plays back the inbound traffic of startCapture files.
+   * With waitForWrites (default), data recorded after a write is held back
+   * until the app writes it; writes that differ from the recording are
+   * emitted as onError. onReplayFinished follows the last recorded chunk;
+   * the connection then stays open until closeConnection, or options.autoClose
+   *
+   * @param {string} deviceName
+   * @param {IReplayOptions} options
+   * @memberof RNSerialportStatic
+   */
+  openReplay(deviceName: string, options: IReplayOptions): void;
+
+  /**
+   * Set the settings used for devices that are connected when attached
+   *
+   * @param {IConnectionOptions} options
+   * @memberof RNSerialportStatic
+   */
+  setDefaultSettings(options: IConnectionOptions): void;
+
+  /**
+   * Change the baud rate of an open connection
    *
    * @param {string} deviceName
    * @param {number} baudRate
+   * @returns {Promise<number>}
    * @memberof RNSerialportStatic
    */
-  connectDevice(deviceName: string, baudRate: number): void;
+  setBaudRate(deviceName: string, baudRate: number): Promise<number>;
 
   /**
    * Closes the connection
@@ -225,28 +728,102 @@ interface RNSerialportStatic {
   disconnect(): void;
 
   /**
-   * Writes string to port
+   * Close the connection and remove it, so the name can be opened again.
+   * Pending writes and transactions fail. Works for USB, loopback and
+   * replay connections; a USB device stays attached
    *
+   * @param {string} deviceName
+   * @returns {Promise<boolean>}
+   * @memberof RNSerialportStatic
+   */
+  closeConnection(deviceName: string): Promise<boolean>;
+
+  /**
+   * Writes string to port. Resolves with the number of bytes written
+   * once the transfer is completed
+   *
+   * @param {string} deviceName
    * @param {string} data
+   * @returns {Promise<number>}
    * @memberof RNSerialportStatic
    */
-  writeString(data: string): void;
+  writeString(deviceName: string, data: string): Promise<number>;
 
   /**
-   * Writes Base64 string to port
+   * Writes string to port encoded in the given charset, e.g. "US-ASCII"
+   * or "ISO-8859-1". Resolves with the number of bytes written
    *
+   * @param {string} deviceName
    * @param {string} data
+   * @param {string} charset
+   * @returns {Promise<number>}
    * @memberof RNSerialportStatic
    */
-  writeBase64(data: string): void;
+  writeEncodedString(deviceName: string, data: string, charset: string): Promise<number>;
 
   /**
-   * Writes hex string to port
+   * Writes Base64 string to port. Resolves with the number of bytes written
+   * once the transfer is completed
    *
+   * @param {string} deviceName
    * @param {string} data
+   * @returns {Promise<number>}
    * @memberof RNSerialportStatic
    */
-  writeHexString(data: string): void
+  writeBase64(deviceName: string, data: string): Promise<number>;
+
+  /**
+   * Writes hex string to port. Resolves with the number of bytes written
+   * once the transfer is completed
+   *
+   * @param {string} deviceName
+   * @param {string} data
+   * @returns {Promise<number>}
+   * @memberof RNSerialportStatic
+   */
+  writeHexString(deviceName: string, data: string): Promise<number>
+
+  /**
+   * Resolves once every write queued before it has been sent
+   *
+   * @param {string} deviceName
+   * @returns {Promise<number>}
+   * @memberof RNSerialportStatic
+   */
+  flush(deviceName: string): Promise<number>
+
+  /**
+   * Resolves the integer handle of an open connection. Handles stay valid
+   * for the life of the connection and are never reused
+   *
+   * @param {string} deviceName
+   * @returns {Promise<number>}
+   * @memberof RNSerialportStatic
+   */
+  getHandle(deviceName: string): Promise<number>;
+
+  /**
+   * Writes the same payload to several connections in one call. Resolves
+   * with one result per handle, in order, once every write has completed
+   *
+   * @param {Array<number>} handles
+   * @param {string} payload hex unless options.payloadEncoding says otherwise
+   * @param {{ payloadEncoding?: "hex" | "base64" | "string" }} options
+   * @returns {Promise<Array<IWriteResult>>}
+   * @memberof RNSerialportStatic
+   */
+  writeMany(handles: Array<number>, payload: string,
+            options: { payloadEncoding?: "hex" | "base64" | "string" }): Promise<Array<IWriteResult>>;
+
+  /**
+   * Writes a payload per connection in one call. Rejects without writing
+   * anything if an entry is malformed or a payload cannot be decoded
+   *
+   * @param {Array<IWriteBatchEntry>} writes
+   * @returns {Promise<Array<IWriteResult>>}
+   * @memberof RNSerialportStatic
+   */
+  writeBatch(writes: Array<IWriteBatchEntry>): Promise<Array<IWriteResult>>;
 
   /**
    * Integer array convert to Utf16 string
@@ -265,5 +842,14 @@ interface RNSerialportStatic {
    * @memberof RNSerialportStatic
    */
   hexToUtf16(hex: string): string
+
+  /**
+   * Base64 string convert to integer array
+   *
+   * @param {string} base64
+   * @returns {Array<number>}
+   * @memberof RNSerialportStatic
+   */
+  base64ToIntArray(base64: string): Array<number>
 }
 export var RNSerialport: RNSerialportStatic;